@@ -0,0 +1,29 @@
+package edu.eci.arsw.benchmarks;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Ejecuta los benchmarks con el perfilador de GC, que agrega la tasa de
+ * asignación (gc.alloc.rate) a throughput, tiempo promedio y percentiles.
+ * Acepta las mismas opciones de línea de comandos que JMH, p. ej.
+ * <pre>
+ * mvn -P jmh compile exec:exec -Djmh.args="PiDigits"
+ * mvn -P jmh compile exec:exec -Djmh.args="CheckHost -p threads=100,500"
+ * </pre>
+ */
+public class BenchmarkRunner {
+    
+    public static void main(String[] args) throws RunnerException, CommandLineOptionException {
+        Options options = new OptionsBuilder()
+                .parent(new CommandLineOptions(args))
+                .addProfiler(GCProfiler.class)
+                .build();
+        new Runner(options).run();
+    }
+}
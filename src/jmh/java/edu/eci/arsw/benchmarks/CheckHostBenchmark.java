@@ -0,0 +1,81 @@
+package edu.eci.arsw.benchmarks;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Timeout;
+import org.openjdk.jmh.annotations.Warmup;
+
+import edu.eci.arsw.blacklistvalidator.HostBlackListsValidator;
+
+/**
+ * Tiempo de checkHost sobre la fachada para las tres IPs de Main con
+ * distintos números de hilos. Para pruebas rápidas conviene limitar los
+ * parámetros, p. ej. -p threads=100,500
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 1, time = 20)
+@Measurement(iterations = 3, time = 20)
+@Timeout(time = 3, timeUnit = TimeUnit.MINUTES)
+@Fork(1)
+public class CheckHostBenchmark {
+    
+    /**
+     * Número de hilos; "cores" y "2xcores" dependen de la máquina
+     */
+    @Param({"1", "cores", "2xcores", "50", "100", "200", "500"})
+    public String threads;
+    
+    /**
+     * 200.24.34.55: ocurrencias en un solo segmento; 202.24.34.55:
+     * ocurrencias repartidas entre segmentos; 212.24.24.55: sin ocurrencias
+     */
+    @Param({"200.24.34.55", "202.24.34.55", "212.24.24.55"})
+    public String ipAddress;
+    
+    private HostBlackListsValidator validator;
+    private int N;
+    
+    // Referencia fuerte para que el nivel no se pierda si el logger se recolecta
+    private Logger rootLogger;
+    
+    @Setup(Level.Trial)
+    public void setUp() {
+        N = threadCount(threads);
+        validator = new HostBlackListsValidator();
+        // Los reportes de la fachada y del validador no deben medirse
+        rootLogger = Logger.getLogger("");
+        rootLogger.setLevel(java.util.logging.Level.WARNING);
+    }
+    
+    @Benchmark
+    public List<Integer> checkHost() {
+        return validator.checkHost(ipAddress, N);
+    }
+    
+    static int threadCount(String threads) {
+        int cores = Runtime.getRuntime().availableProcessors();
+        switch (threads) {
+            case "cores":
+                return cores;
+            case "2xcores":
+                return cores * 2;
+            default:
+                return Integer.parseInt(threads);
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package edu.eci.arsw.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import edu.eci.arsw.math.PiDigits;
+
+/**
+ * PiDigits.getDigits para distintas posiciones, cantidades de dígitos e
+ * hilos: extract calcula los dígitos con la caché vacía en cada llamada y
+ * cached mide sólo la lectura de bloques ya guardados
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PiDigitsBenchmark {
+    
+    /**
+     * Sólo posiciones donde una llamada sin caché tarda más de 1 ms: con
+     * menos, el @Setup(Level.Invocation) de EmptyCache pesa más que la
+     * llamada medida
+     */
+    @Param({"10000", "30000"})
+    public int start;
+    
+    @Param({"8", "40"})
+    public int count;
+    
+    @Param({"1", "4"})
+    public int threads;
+    
+    /**
+     * Vacía la caché antes de cada llamada
+     */
+    @State(Scope.Thread)
+    public static class EmptyCache {
+        
+        @Setup(Level.Invocation)
+        public void clear() {
+            PiDigits.clearCache();
+        }
+    }
+    
+    @Benchmark
+    public byte[] extract(EmptyCache emptyCache) {
+        return PiDigits.getDigits(start, count, threads);
+    }
+    
+    @Benchmark
+    public byte[] cached() {
+        return PiDigits.getDigits(start, count, threads);
+    }
+}
@@ -0,0 +1,160 @@
+package edu.eci.arsw.blacklistvalidator;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Phaser;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Búsqueda de una IP cuyo número de trabajadores sigue al ConcurrencyLimiter
+ * mientras avanza: al terminar cada trozo un trabajador informa la latencia
+ * y, según el nuevo límite, se retira o arranca trabajadores adicionales.
+ */
+class AdaptiveScan {
+    
+    private final ChunkScheduler scheduler;
+    private final String ipAddress;
+    private final BlacklistDataSource skds;
+    private final ScanControl control;
+    private final ConcurrencyLimiter limiter;
+    private final Executor executor;
+    
+    private final ConcurrentLinkedQueue<ChunkWorker> workers = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger active = new AtomicInteger(0);
+    private final AtomicInteger spawned = new AtomicInteger(0);
+    private final AtomicInteger retired = new AtomicInteger(0);
+    private final AtomicInteger peakActive = new AtomicInteger(0);
+    // Una parte por trabajador más la del hilo que espera en run()
+    private final Phaser running = new Phaser(1);
+    private volatile RuntimeException failure;
+    
+    /**
+     * @param executor dónde corren los trabajadores: el pool del motor o un
+     * hilo nuevo por trabajador
+     */
+    AdaptiveScan(ChunkScheduler scheduler, String ipAddress, BlacklistDataSource skds,
+                 ScanControl control, ConcurrencyLimiter limiter, Executor executor) {
+        this.scheduler = scheduler;
+        this.ipAddress = ipAddress;
+        this.skds = skds;
+        this.control = control;
+        this.limiter = limiter;
+        this.executor = executor;
+    }
+    
+    /**
+     * Arranca getLimit() trabajadores y espera a que terminen todos, incluso
+     * los que se arrancaron después. Si el hilo que espera es interrumpido se
+     * cancela la búsqueda y se restaura el estado de interrupción.
+     * @return trozos revisados, ordenados por índice de lista negra
+     */
+    List<BlackListSegment> run() {
+        int initial = limiter.getLimit();
+        for (int i = 0; i < initial && scheduler.hasWork(); i++) {
+            active.incrementAndGet();
+            spawn();
+        }
+        
+        int phase = running.arrive();
+        try {
+            running.awaitAdvanceInterruptibly(phase);
+        } catch (InterruptedException ex) {
+            control.cancel();
+            running.awaitAdvance(phase);
+            Thread.currentThread().interrupt();
+        }
+        if (failure != null) {
+            throw new IllegalStateException("Scan of " + ipAddress + " failed", failure);
+        }
+        // Los que se retiraron terminaron antes a propósito
+        List<ChunkWorker> finished = new ArrayList<>();
+        for (ChunkWorker worker : workers) {
+            if (!worker.isRetired()) {
+                finished.add(worker);
+            }
+        }
+        ScanMetrics.getInstance().recordFinishSpread(ChunkWorker.finishSpreadNanos(finished));
+        return ChunkWorker.collectChunks(new ArrayList<>(workers));
+    }
+    
+    /**
+     * Lo llama cada trabajador al terminar un trozo.
+     * @return false si el trabajador debe retirarse porque hay más
+     * trabajadores que el límite
+     */
+    boolean afterChunk(long elapsedNanos, int probes) {
+        limiter.recordSample(elapsedNanos, probes, active.get());
+        int limit = limiter.getLimit();
+        int current = active.get();
+        if (current > limit) {
+            if (active.compareAndSet(current, current - 1)) {
+                retired.incrementAndGet();
+                return false;
+            }
+            return true;
+        }
+        while (current < limit && scheduler.hasWork() && !control.shouldStop()) {
+            if (active.compareAndSet(current, current + 1)) {
+                spawn();
+            }
+            current = active.get();
+        }
+        return true;
+    }
+    
+    /**
+     * @return trabajadores arrancados, contando los del principio
+     */
+    int getSpawnedCount() {
+        return spawned.get();
+    }
+    
+    /**
+     * @return trabajadores que se retiraron porque el límite bajó
+     */
+    int getRetiredCount() {
+        return retired.get();
+    }
+    
+    /**
+     * @return máximo de trabajadores activos a la vez
+     */
+    int getPeakActive() {
+        return peakActive.get();
+    }
+    
+    private void spawn() {
+        final ChunkWorker worker = new ChunkWorker(scheduler, ipAddress, skds, control, this);
+        workers.add(worker);
+        spawned.incrementAndGet();
+        int current = active.get();
+        int peak = peakActive.get();
+        while (current > peak && !peakActive.compareAndSet(peak, current)) {
+            peak = peakActive.get();
+        }
+        running.register();
+        try {
+            executor.execute(() -> {
+                try {
+                    worker.run();
+                } catch (RuntimeException ex) {
+                    failure = ex;
+                    control.cancel();
+                } finally {
+                    if (!worker.isRetired()) {
+                        active.decrementAndGet();
+                    }
+                    running.arriveAndDeregister();
+                }
+            });
+        } catch (RuntimeException ex) {
+            // El pool no aceptó la tarea (p. ej. el motor se cerró)
+            workers.remove(worker);
+            active.decrementAndGet();
+            running.arriveAndDeregister();
+            throw ex;
+        }
+    }
+}
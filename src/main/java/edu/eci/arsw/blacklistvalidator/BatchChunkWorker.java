@@ -0,0 +1,93 @@
+package edu.eci.arsw.blacklistvalidator;
+
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * Trabajador de checkHosts: por cada lista negra de los trozos que toma
+ * consulta todas las IPs del lote que siguen pendientes, de modo que cada
+ * lista se recorre una sola vez para todo el lote.
+ */
+public class BatchChunkWorker implements Runnable {
+    
+    private final ChunkScheduler scheduler;
+    private final String[] ipAddresses;
+    private final BlacklistDataSource skds;
+    private final AtomicIntegerArray globalOcurrences;
+    private final int alarmCount;
+    private final int[] checkedListsCount;
+    private final List<List<Integer>> blackListOcurrences;
+    
+    /**
+     * @param globalOcurrences ocurrencias de cada IP compartidas entre
+     * trabajadores; una IP deja de consultarse al llegar a alarmCount
+     */
+    public BatchChunkWorker(ChunkScheduler scheduler, String[] ipAddresses,
+                            BlacklistDataSource skds,
+                            AtomicIntegerArray globalOcurrences, int alarmCount) {
+        this.scheduler = scheduler;
+        this.ipAddresses = ipAddresses;
+        this.skds = skds;
+        this.globalOcurrences = globalOcurrences;
+        this.alarmCount = alarmCount;
+        this.checkedListsCount = new int[ipAddresses.length];
+        this.blackListOcurrences = new ArrayList<>(ipAddresses.length);
+        for (int j = 0; j < ipAddresses.length; j++) {
+            blackListOcurrences.add(new LinkedList<Integer>());
+        }
+    }
+    
+    @Override
+    public void run() {
+        ScanMetrics metrics = ScanMetrics.getInstance();
+        int totalServers = scheduler.getTotalServers();
+        boolean pending = true;
+        while (pending) {
+            int size = scheduler.chunkSize();
+            int start = scheduler.claim(size);
+            if (start >= totalServers) {
+                break;
+            }
+            int end = Math.min(start + size, totalServers) - 1;
+            
+            // La latencia se mide por lista negra (todas las IPs pendientes),
+            // que es la unidad en que el scheduler reparte los trozos
+            int visited = 0;
+            int checks = 0;
+            int hits = 0;
+            long begin = System.nanoTime();
+            for (int i = start; i <= end && pending; i++) {
+                pending = false;
+                visited++;
+                for (int j = 0; j < ipAddresses.length; j++) {
+                    if (globalOcurrences.get(j) >= alarmCount) {
+                        continue;
+                    }
+                    pending = true;
+                    checkedListsCount[j]++;
+                    checks++;
+                    long probeBegin = System.nanoTime();
+                    boolean found = skds.isInBlackListServer(i, ipAddresses[j]);
+                    metrics.recordProbe(System.nanoTime() - probeBegin);
+                    if (found) {
+                        blackListOcurrences.get(j).add(i);
+                        globalOcurrences.incrementAndGet(j);
+                        hits++;
+                    }
+                }
+            }
+            scheduler.recordLatency(System.nanoTime() - begin, visited);
+            metrics.recordWork(checks, hits);
+        }
+    }
+    
+    public int getCheckedListsCount(int ipIndex) {
+        return checkedListsCount[ipIndex];
+    }
+    
+    public List<Integer> getBlackListOcurrences(int ipIndex) {
+        return blackListOcurrences.get(ipIndex);
+    }
+}
@@ -0,0 +1,306 @@
+package edu.eci.arsw.blacklistvalidator;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Motor de búsqueda de larga vida: mantiene los hilos vivos entre llamadas a
+ * checkHost en lugar de crear N hilos nuevos en cada una. Debe cerrarse con
+ * close() cuando ya no se necesite.
+ */
+public class BlackListScanEngine implements AutoCloseable {
+    
+    private static final long SHUTDOWN_TIMEOUT_SECONDS = 10;
+    
+    /**
+     * Pool que realmente ejecuta los segmentos
+     */
+    public enum ExecutorKind {
+        PLATFORM_POOL,
+        FORK_JOIN_POOL,
+        VIRTUAL_THREAD_PER_TASK,
+        /**
+         * Lo que usa VIRTUAL_THREADS en JVMs anteriores a Java 21
+         */
+        CACHED_PLATFORM_POOL
+    }
+    
+    private final ScanStrategy strategy;
+    private final ExecutorService executor;
+    private final ExecutorKind executorKind;
+    
+    /**
+     * @param strategy forma de ejecutar los segmentos
+     * @param parallelism número de hilos del pool; se ignora con VIRTUAL_THREADS
+     */
+    public BlackListScanEngine(ScanStrategy strategy, int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("parallelism must be positive: " + parallelism);
+        }
+        this.strategy = strategy;
+        switch (strategy) {
+            case PLATFORM_POOL:
+                this.executor = new ThreadPoolExecutor(parallelism, parallelism,
+                        60L, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+                        namedDaemonThreads("blacklist-scan"));
+                this.executorKind = ExecutorKind.PLATFORM_POOL;
+                break;
+            case FORK_JOIN:
+                this.executor = new ForkJoinPool(parallelism);
+                this.executorKind = ExecutorKind.FORK_JOIN_POOL;
+                break;
+            case VIRTUAL_THREADS:
+                ExecutorService virtual = newVirtualThreadPerTaskExecutor();
+                if (virtual != null) {
+                    this.executor = virtual;
+                    this.executorKind = ExecutorKind.VIRTUAL_THREAD_PER_TASK;
+                } else {
+                    LOG.log(Level.INFO,
+                            "Virtual threads not available in this JVM, using a cached platform thread pool");
+                    this.executor = Executors.newCachedThreadPool(namedDaemonThreads("blacklist-range"));
+                    this.executorKind = ExecutorKind.CACHED_PLATFORM_POOL;
+                }
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown strategy " + strategy);
+        }
+    }
+    
+    public ScanStrategy getStrategy() {
+        return strategy;
+    }
+    
+    /**
+     * @return pool que ejecuta los segmentos; con VIRTUAL_THREADS depende
+     * de la JVM
+     */
+    public ExecutorKind getExecutorKind() {
+        return executorKind;
+    }
+    
+    @Override
+    public String toString() {
+        return "BlackListScanEngine[" + strategy + " on " + executorKind + "]";
+    }
+    
+    /**
+     * Busca la IP en todas las listas negras con N trabajadores que toman
+     * trozos del scheduler dado. Con cualquier estrategia hay a lo sumo N
+     * trozos (y no más que los hilos del pool) revisándose a la vez.
+     * Si el hilo que llama es interrumpido se cancela la búsqueda, de modo
+     * que los trabajadores del pool también se detienen.
+     * @param control estado compartido que dice cuándo detenerse
+     * @return trozos revisados, ordenados por índice de lista negra
+     */
+    public List<BlackListSegment> scan(String ipaddress, int N, BlacklistDataSource skds,
+                                       ChunkScheduler scheduler, ScanControl control) {
+        try {
+            if (scheduler.getFirstServer() >= scheduler.getTotalServers()) {
+                return new ArrayList<>();
+            }
+            if (strategy == ScanStrategy.FORK_JOIN) {
+                ConcurrentHashMap<Thread, Long> finishes = new ConcurrentHashMap<>();
+                List<BlackListSegment> segments = ((ForkJoinPool) executor).invoke(new RangeTask(
+                        scheduler.getFirstServer(), scheduler.getTotalServers() - 1, scheduler,
+                        ipaddress, skds, control, new Semaphore(N), finishes));
+                ScanMetrics.getInstance().recordFinishSpread(spreadNanos(finishes.values()));
+                return segments;
+            }
+            
+            List<ChunkWorker> workers = new ArrayList<>(N);
+            for (int i = 0; i < N; i++) {
+                workers.add(new ChunkWorker(scheduler, ipaddress, skds, control));
+            }
+            runAll(workers);
+            ScanMetrics.getInstance().recordFinishSpread(ChunkWorker.finishSpreadNanos(workers));
+            return ChunkWorker.collectChunks(workers);
+        } catch (InterruptedException ex) {
+            control.cancel();
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while scanning " + ipaddress, ex);
+        } catch (ExecutionException ex) {
+            throw new IllegalStateException("Scan of " + ipaddress + " failed", ex.getCause());
+        }
+    }
+    
+    /**
+     * Ejecuta las tareas en el pool y espera a que terminen todas
+     */
+    public void runAll(List<? extends Runnable> tasks) throws InterruptedException, ExecutionException {
+        List<Future<?>> pending = new ArrayList<>(tasks.size());
+        for (Runnable task : tasks) {
+            pending.add(executor.submit(task));
+        }
+        for (Future<?> future : pending) {
+            future.get();
+        }
+    }
+    
+    /**
+     * Ejecuta una tarea en el pool sin esperarla
+     */
+    public void execute(Runnable task) {
+        executor.execute(task);
+    }
+    
+    /**
+     * Detiene el pool esperando a que terminen las búsquedas en curso
+     */
+    @Override
+    public void close() {
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(SHUTDOWN_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                executor.shutdownNow();
+            }
+        } catch (InterruptedException ex) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+    
+    /**
+     * @return tiempo entre el primer y el último hilo del pool en terminar
+     * su última hoja
+     */
+    private static long spreadNanos(Collection<Long> finishes) {
+        long first = Long.MAX_VALUE;
+        long last = Long.MIN_VALUE;
+        for (long finish : finishes) {
+            first = Math.min(first, finish);
+            last = Math.max(last, finish);
+        }
+        return finishes.isEmpty() ? 0 : last - first;
+    }
+    
+    /**
+     * Tarea que parte el rango en mitades hasta que cada hoja cabe en el
+     * tamaño de trozo actual del scheduler; los hilos ociosos del pool roban
+     * las mitades pendientes. Cada hoja toma un permiso de leaves mientras
+     * se revisa, así que a lo sumo N hojas consultan las listas a la vez.
+     *
+     * Los cortes son estáticos: las mitades se crean antes de que sus hojas
+     * se revisen, así que casi todas usan el tamaño de trozo inicial y una
+     * hoja lenta no se reparte entre los hilos que quedan libres, como sí
+     * pasa con los trozos que ChunkWorker pide al scheduler.
+     */
+    private static class RangeTask extends RecursiveTask<List<BlackListSegment>> {
+        
+        private static final long serialVersionUID = 1L;
+        
+        private final int from;
+        private final int to;
+        private final ChunkScheduler scheduler;
+        private final String ipaddress;
+        private final BlacklistDataSource skds;
+        private final ScanControl control;
+        private final Semaphore leaves;
+        // Momento en que cada hilo del pool terminó su última hoja
+        private final ConcurrentHashMap<Thread, Long> finishes;
+        
+        RangeTask(int from, int to, ChunkScheduler scheduler, String ipaddress,
+                  BlacklistDataSource skds, ScanControl control, Semaphore leaves,
+                  ConcurrentHashMap<Thread, Long> finishes) {
+            this.from = from;
+            this.to = to;
+            this.scheduler = scheduler;
+            this.ipaddress = ipaddress;
+            this.skds = skds;
+            this.control = control;
+            this.leaves = leaves;
+            this.finishes = finishes;
+        }
+        
+        @Override
+        protected List<BlackListSegment> compute() {
+            if (control.shouldStop()) {
+                return new ArrayList<>();
+            }
+            if (to - from + 1 <= scheduler.chunkSize()) {
+                return runLeaf();
+            }
+            int middle = from + (to - from) / 2;
+            RangeTask left = new RangeTask(from, middle, scheduler, ipaddress, skds, control,
+                    leaves, finishes);
+            RangeTask right = new RangeTask(middle + 1, to, scheduler, ipaddress, skds, control,
+                    leaves, finishes);
+            right.fork();
+            List<BlackListSegment> result = left.compute();
+            result.addAll(right.join());
+            return result;
+        }
+        
+        /**
+         * Las consultas bloquean el hilo (la fachada duerme) sin avisar al
+         * pool: así no crea hilos de compensación y el número de hojas en
+         * curso queda acotado por N y por el paralelismo del pool, como en
+         * las demás estrategias
+         */
+        private List<BlackListSegment> runLeaf() {
+            List<BlackListSegment> result = new ArrayList<>();
+            try {
+                leaves.acquire();
+            } catch (InterruptedException ex) {
+                control.cancel();
+                Thread.currentThread().interrupt();
+                return result;
+            }
+            try {
+                BlackListSegment segment = new BlackListSegment(from, to, ipaddress, skds, control);
+                long begin = System.nanoTime();
+                segment.run();
+                scheduler.recordLatency(System.nanoTime() - begin, segment.getCheckedListsCount());
+                result.add(segment);
+                return result;
+            } finally {
+                leaves.release();
+                finishes.put(Thread.currentThread(), System.nanoTime());
+            }
+        }
+    }
+    
+    static ThreadFactory namedDaemonThreads(final String prefix) {
+        final AtomicInteger count = new AtomicInteger(0);
+        return new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, prefix + "-" + count.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            }
+        };
+    }
+    
+    /**
+     * Executors.newVirtualThreadPerTaskExecutor() sólo existe desde Java 21;
+     * el proyecto compila para Java 8, así que se busca por reflexión.
+     * @return el executor, o null si la JVM no tiene hilos virtuales
+     */
+    private static ExecutorService newVirtualThreadPerTaskExecutor() {
+        try {
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        } catch (ReflectiveOperationException ex) {
+            return null;
+        }
+    }
+    
+    private static final Logger LOG = Logger.getLogger(BlackListScanEngine.class.getName());
+}
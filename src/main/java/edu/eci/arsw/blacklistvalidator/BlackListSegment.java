@@ -0,0 +1,81 @@
+package edu.eci.arsw.blacklistvalidator;
+
+import java.util.LinkedList;
+import java.util.List;
+
+/**
+ * Búsqueda de una IP en un segmento [startIndex, endIndex] de listas negras.
+ * Es el trozo que los ChunkWorker toman del ChunkScheduler y la hoja de la
+ * estrategia FORK_JOIN de BlackListScanEngine.
+ */
+public class BlackListSegment implements Runnable {
+    
+    private int startIndex;
+    private int endIndex;
+    private String ipAddress;
+    private int ocurrencesCount;
+    private List<Integer> blackListOcurrences;
+    private BlacklistDataSource skds;
+    private int checkedListsCount;
+    private ScanControl control;
+    
+    /**
+     * @param control estado compartido entre segmentos: cuenta las
+     * ocurrencias y dice cuándo dejar de buscar
+     */
+    public BlackListSegment(int startIndex, int endIndex, String ipAddress,
+                            BlacklistDataSource skds, ScanControl control) {
+        this.startIndex = startIndex;
+        this.endIndex = endIndex;
+        this.ipAddress = ipAddress;
+        this.skds = skds;
+        this.ocurrencesCount = 0;
+        this.blackListOcurrences = new LinkedList<>();
+        this.checkedListsCount = 0;
+        this.control = control;
+    }
+    
+    @Override
+    public void run() {
+        ScanMetrics metrics = ScanMetrics.getInstance();
+        // Buscar en el segmento asignado
+        for (int i = startIndex; i <= endIndex; i++) {
+            // Otro segmento ya alcanzó el umbral o la búsqueda se canceló
+            if (control.shouldStop()) {
+                break;
+            }
+            
+            checkedListsCount++;
+            
+            long begin = System.nanoTime();
+            boolean found = skds.isInBlackListServer(i, ipAddress);
+            metrics.recordProbe(System.nanoTime() - begin);
+            if (found) {
+                blackListOcurrences.add(i);
+                ocurrencesCount++;
+                control.recordOcurrence();
+            }
+        }
+        metrics.recordWork(checkedListsCount, ocurrencesCount);
+    }
+    
+    public int getStartIndex() {
+        return startIndex;
+    }
+    
+    public int getEndIndex() {
+        return endIndex;
+    }
+    
+    public int getOcurrencesCount() {
+        return ocurrencesCount;
+    }
+    
+    public List<Integer> getBlackListOcurrences() {
+        return blackListOcurrences;
+    }
+    
+    public int getCheckedListsCount() {
+        return checkedListsCount;
+    }
+}
@@ -0,0 +1,18 @@
+package edu.eci.arsw.blacklistvalidator;
+
+/**
+ * Origen de las listas negras que consultan los trabajadores. En producción
+ * es HostBlacklistsDataSourceFacade (a través de FacadeDataSource); la
+ * interfaz permite decorarlo, p. ej. con HedgedDataSource, o reemplazarlo en
+ * pruebas.
+ */
+public interface BlacklistDataSource {
+    
+    int getRegisteredServersCount();
+    
+    boolean isInBlackListServer(int serverNumber, String ipaddress);
+    
+    void reportAsTrustworthy(String host);
+    
+    void reportAsNotTrustworthy(String host);
+}
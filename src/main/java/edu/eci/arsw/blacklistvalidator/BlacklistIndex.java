@@ -0,0 +1,345 @@
+package edu.eci.arsw.blacklistvalidator;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Índice local, compilado a un archivo binario, de las ocurrencias conocidas
+ * (lista negra, IP) de las primeras getServersCount() listas negras. El
+ * archivo se mapea en memoria con FileChannel.map, así que abrirlo es casi
+ * inmediato y los datos viven fuera del heap.
+ *
+ * El índice es una foto: sus respuestas reemplazan a las de la fachada para
+ * las listas que cubre, así que una ocurrencia agregada a esas listas
+ * después de compilarlo no aparece. Por eso guarda cuándo se tomó la
+ * instantánea (getCompiledAtMillis) y HostBlackListsValidator deja de usar
+ * un índice más viejo que su edad máxima.
+ *
+ * Formato (enteros big-endian):
+ * <pre>
+ * int MAGIC, int VERSION, int serversCount, int ipCount,
+ * int bloomWords, int bloomHashes, int postingsCount, int 0,
+ * long compiledAtMillis
+ * long[bloomWords]     filtro de Bloom de las IPs
+ * int[ipCount]         IPs empaquetadas, ordenadas
+ * int[ipCount + 1]     inicio de la lista de servidores de cada IP
+ * int[postingsCount]   números de lista negra, ordenados por IP
+ * </pre>
+ */
+public final class BlacklistIndex {
+    
+    private static final int MAGIC = 0x424C4958;
+    private static final int VERSION = 2;
+    private static final int HEADER_BYTES = 40;
+    private static final int BLOOM_BITS_PER_IP = 10;
+    private static final int BLOOM_HASHES = 7;
+    
+    private final MappedByteBuffer buffer;
+    private final int serversCount;
+    private final int ipCount;
+    private final int bloomWords;
+    private final int bloomHashes;
+    private final int keysOffset;
+    private final int offsetsOffset;
+    private final int postingsOffset;
+    private final int postingsCount;
+    private final long compiledAtMillis;
+    
+    private BlacklistIndex(MappedByteBuffer buffer) throws IOException {
+        this.buffer = buffer;
+        if (buffer.capacity() < HEADER_BYTES || buffer.getInt(0) != MAGIC) {
+            throw new IOException("Not a blacklist index file");
+        }
+        if (buffer.getInt(4) != VERSION) {
+            throw new IOException("Unsupported blacklist index version " + buffer.getInt(4));
+        }
+        this.serversCount = buffer.getInt(8);
+        this.ipCount = buffer.getInt(12);
+        this.bloomWords = buffer.getInt(16);
+        this.bloomHashes = buffer.getInt(20);
+        this.postingsCount = buffer.getInt(24);
+        this.compiledAtMillis = buffer.getLong(32);
+        if (serversCount <= 0 || ipCount < 0 || bloomWords <= 0 || bloomHashes <= 0 || postingsCount < 0) {
+            throw new IOException("Corrupt blacklist index header");
+        }
+        // En long: un encabezado dañado no debe desbordar los desplazamientos
+        long keys = HEADER_BYTES + bloomWords * 8L;
+        long offsets = keys + ipCount * 4L;
+        long postings = offsets + (ipCount + 1L) * 4L;
+        if (buffer.capacity() != postings + postingsCount * 4L) {
+            throw new IOException("Truncated blacklist index file");
+        }
+        this.keysOffset = (int) keys;
+        this.offsetsOffset = (int) offsets;
+        this.postingsOffset = (int) postings;
+    }
+    
+    /**
+     * Revisa todo el archivo: que las IPs estén ordenadas y que las listas de
+     * servidores estén dentro del archivo y del rango del índice. Recorre
+     * cada página del mapeo, así que open no lo hace; serversOf revisa sólo
+     * la entrada que lee.
+     * @throws IOException si el índice está dañado
+     */
+    public void verify() throws IOException {
+        for (int i = 1; i < ipCount; i++) {
+            if (buffer.getInt(keysOffset + (i - 1) * 4) >= buffer.getInt(keysOffset + i * 4)) {
+                throw new IOException("Corrupt blacklist index: keys out of order at " + i);
+            }
+        }
+        int previous = 0;
+        for (int i = 0; i <= ipCount; i++) {
+            int offset = buffer.getInt(offsetsOffset + i * 4);
+            if (offset < previous || offset > postingsCount || (i == 0 && offset != 0)) {
+                throw new IOException("Corrupt blacklist index: bad postings offset at " + i);
+            }
+            previous = offset;
+        }
+        if (previous != postingsCount) {
+            throw new IOException("Corrupt blacklist index: postings count mismatch");
+        }
+        for (int i = 0; i < postingsCount; i++) {
+            int server = buffer.getInt(postingsOffset + i * 4);
+            if (server < 0 || server >= serversCount) {
+                throw new IOException("Corrupt blacklist index: server " + server + " outside [0, "
+                        + serversCount + ")");
+            }
+        }
+    }
+    
+    /**
+     * Mapea el archivo de índice en memoria; el canal se cierra enseguida y
+     * el mapeo sigue siendo válido mientras el índice esté en uso. Sólo se
+     * revisa el encabezado contra el tamaño del archivo; verify revisa el
+     * resto.
+     * @throws IOException si el archivo no es un índice, está truncado o
+     * dañado
+     */
+    public static BlacklistIndex open(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return new BlacklistIndex(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+    
+    /**
+     * @return número de listas negras que cubre el índice; las listas con
+     * número mayor o igual son más nuevas que el índice
+     */
+    public int getServersCount() {
+        return serversCount;
+    }
+    
+    public int getIpCount() {
+        return ipCount;
+    }
+    
+    /**
+     * @return momento (milisegundos desde la época) de la instantánea de la
+     * que se compiló el índice
+     */
+    public long getCompiledAtMillis() {
+        return compiledAtMillis;
+    }
+    
+    /**
+     * @return false si la IP seguro no está en ninguna lista del índice
+     */
+    public boolean mightContain(int ipaddress) {
+        long hash = mix64(ipaddress);
+        long bits = bloomWords * 64L;
+        for (int i = 0; i < bloomHashes; i++) {
+            long bit = bloomBit(hash, i, bits);
+            if ((buffer.getLong(HEADER_BYTES + (int) (bit >>> 6) * 8) & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    /**
+     * @return números de las listas negras del índice donde está la IP, en
+     * orden; vacío si no está en ninguna, o null si su entrada está dañada
+     * y la IP debe revisarse sin el índice
+     */
+    public int[] serversOf(int ipaddress) {
+        if (!mightContain(ipaddress)) {
+            return new int[0];
+        }
+        int low = 0;
+        int high = ipCount - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int key = buffer.getInt(keysOffset + middle * 4);
+            if (key < ipaddress) {
+                low = middle + 1;
+            } else if (key > ipaddress) {
+                high = middle - 1;
+            } else {
+                int from = buffer.getInt(offsetsOffset + middle * 4);
+                int to = buffer.getInt(offsetsOffset + (middle + 1) * 4);
+                if (from < 0 || from > to || to > postingsCount) {
+                    return null;
+                }
+                int[] servers = new int[to - from];
+                for (int i = 0; i < servers.length; i++) {
+                    servers[i] = buffer.getInt(postingsOffset + (from + i) * 4);
+                    if (servers[i] < 0 || servers[i] >= serversCount) {
+                        return null;
+                    }
+                }
+                return servers;
+            }
+        }
+        return new int[0];
+    }
+    
+    public static Builder builder(int serversCount) {
+        return new Builder(serversCount);
+    }
+    
+    private static long mix64(int key) {
+        long z = (key & 0xFFFFFFFFL) * 0x9E3779B97F4A7C15L;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+    
+    /**
+     * Posición del i-ésimo bit de la IP en el filtro (doble hashing)
+     */
+    private static long bloomBit(long hash, int i, long bits) {
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32) | 1;
+        return ((h1 + i * h2) & 0x7FFFFFFFL) % bits;
+    }
+    
+    /**
+     * Acumula ocurrencias (lista negra, IP) y las compila a un archivo de índice
+     */
+    public static class Builder {
+        
+        private final int serversCount;
+        private final Map<Integer, List<Integer>> occurrences = new HashMap<>();
+        // 0: el momento en que se escribe el archivo
+        private long compiledAtMillis = 0;
+        
+        private Builder(int serversCount) {
+            this.serversCount = serversCount;
+        }
+        
+        /**
+         * @param epochMillis momento en que se tomó la instantánea de las
+         * listas; por omisión, el momento en que se escribe el archivo
+         */
+        public Builder compiledAt(long epochMillis) {
+            this.compiledAtMillis = epochMillis;
+            return this;
+        }
+        
+        /**
+         * @throws IllegalArgumentException si la lista no está entre las que
+         * cubre el índice
+         */
+        public Builder add(int serverNumber, int ipaddress) {
+            if (serverNumber < 0 || serverNumber >= serversCount) {
+                throw new IllegalArgumentException("Server " + serverNumber
+                        + " outside the indexed range [0, " + serversCount + ")");
+            }
+            List<Integer> servers = occurrences.get(ipaddress);
+            if (servers == null) {
+                servers = new ArrayList<>();
+                occurrences.put(ipaddress, servers);
+            }
+            servers.add(serverNumber);
+            return this;
+        }
+        
+        public Builder add(int serverNumber, String ipaddress) {
+            return add(serverNumber, IpAddresses.pack(ipaddress));
+        }
+        
+        public void writeTo(Path file) throws IOException {
+            int[] keys = new int[occurrences.size()];
+            int k = 0;
+            for (Integer key : occurrences.keySet()) {
+                keys[k++] = key;
+            }
+            Arrays.sort(keys);
+            
+            int[][] postings = new int[keys.length][];
+            int postingsCount = 0;
+            for (int i = 0; i < keys.length; i++) {
+                postings[i] = distinctSorted(occurrences.get(keys[i]));
+                postingsCount += postings[i].length;
+            }
+            
+            int bloomWords = Math.max(1, (keys.length * BLOOM_BITS_PER_IP + 63) / 64);
+            long[] bloom = new long[bloomWords];
+            long bits = bloomWords * 64L;
+            for (int key : keys) {
+                long hash = mix64(key);
+                for (int i = 0; i < BLOOM_HASHES; i++) {
+                    long bit = bloomBit(hash, i, bits);
+                    bloom[(int) (bit >>> 6)] |= 1L << bit;
+                }
+            }
+            
+            try (OutputStream fileOut = Files.newOutputStream(file);
+                 DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fileOut, 1 << 16))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeInt(serversCount);
+                out.writeInt(keys.length);
+                out.writeInt(bloomWords);
+                out.writeInt(BLOOM_HASHES);
+                out.writeInt(postingsCount);
+                out.writeInt(0);
+                out.writeLong(compiledAtMillis != 0 ? compiledAtMillis : System.currentTimeMillis());
+                for (long word : bloom) {
+                    out.writeLong(word);
+                }
+                for (int key : keys) {
+                    out.writeInt(key);
+                }
+                int offset = 0;
+                for (int[] servers : postings) {
+                    out.writeInt(offset);
+                    offset += servers.length;
+                }
+                out.writeInt(offset);
+                for (int[] servers : postings) {
+                    for (int server : servers) {
+                        out.writeInt(server);
+                    }
+                }
+            }
+        }
+        
+        private static int[] distinctSorted(List<Integer> servers) {
+            int[] sorted = new int[servers.size()];
+            for (int i = 0; i < sorted.length; i++) {
+                sorted[i] = servers.get(i);
+            }
+            Arrays.sort(sorted);
+            int distinct = 0;
+            for (int i = 0; i < sorted.length; i++) {
+                if (i == 0 || sorted[i] != sorted[i - 1]) {
+                    sorted[distinct++] = sorted[i];
+                }
+            }
+            return Arrays.copyOf(sorted, distinct);
+        }
+    }
+}
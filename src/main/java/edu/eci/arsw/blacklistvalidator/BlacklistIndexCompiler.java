@@ -0,0 +1,57 @@
+package edu.eci.arsw.blacklistvalidator;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Instant;
+
+/**
+ * Compila una instantánea de ocurrencias a un archivo de BlacklistIndex.
+ *
+ * Uso: BlacklistIndexCompiler snapshot.txt index.bin serversCount
+ *
+ * Cada línea de la instantánea es "númeroDeLista IP"; las líneas vacías y
+ * las que empiezan con '#' se ignoran. serversCount es el número de listas
+ * negras que había cuando se tomó la instantánea. La fecha de modificación
+ * de la instantánea queda como fecha del índice.
+ */
+public class BlacklistIndexCompiler {
+    
+    public static void main(String[] args) throws IOException {
+        if (args.length != 3) {
+            System.err.println("Usage: BlacklistIndexCompiler <snapshot.txt> <index.bin> <serversCount>");
+            System.exit(1);
+        }
+        Path snapshot = Paths.get(args[0]);
+        Path indexFile = Paths.get(args[1]);
+        BlacklistIndex.Builder builder = BlacklistIndex.builder(Integer.parseInt(args[2]))
+                .compiledAt(Files.getLastModifiedTime(snapshot).toMillis());
+        
+        int lines = 0;
+        try (BufferedReader reader = Files.newBufferedReader(snapshot, StandardCharsets.US_ASCII)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+                String[] fields = line.split("[\\s,]+");
+                if (fields.length != 2) {
+                    throw new IOException("Malformed snapshot line: " + line);
+                }
+                builder.add(Integer.parseInt(fields[0]), fields[1]);
+                lines++;
+            }
+        }
+        builder.writeTo(indexFile);
+        
+        BlacklistIndex index = BlacklistIndex.open(indexFile);
+        index.verify();
+        System.out.println("Compiled " + lines + " occurrences of " + index.getIpCount()
+                + " hosts in " + index.getServersCount() + " black lists to " + indexFile
+                + " (snapshot of " + Instant.ofEpochMilli(index.getCompiledAtMillis()) + ")");
+    }
+}
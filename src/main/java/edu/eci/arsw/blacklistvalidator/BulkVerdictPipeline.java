@@ -0,0 +1,339 @@
+package edu.eci.arsw.blacklistvalidator;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Valida un archivo de IPs (una por línea) de cualquier tamaño y escribe un
+ * veredicto por línea en un archivo de salida.
+ *
+ * Un hilo lector mapea el archivo en memoria por ventanas, empaqueta las IPs
+ * en bloques de int[] y los pone en una cola acotada; el hilo que llama a
+ * run toma cada bloque, lo valida con checkHosts y escribe los veredictos.
+ * Cuando la validación va más lenta que la lectura la cola se llena y el
+ * lector espera, así que la memoria usada no depende del tamaño del archivo.
+ *
+ * Después de cada bloque se guarda en el archivo de progreso hasta qué byte
+ * de la entrada y de la salida se llegó; si el proceso se interrumpe, la
+ * siguiente ejecución con los mismos archivos continúa desde ahí. El archivo
+ * de progreso se borra al terminar.
+ *
+ * Uso: BulkVerdictPipeline ips.txt veredictos.tsv [hilos]
+ */
+public class BulkVerdictPipeline {
+    
+    private static final int DEFAULT_BLOCK_SIZE = 1024;
+    private static final int DEFAULT_MAX_IN_FLIGHT = 16 * 1024;
+    private static final int DEFAULT_WINDOW_BYTES = 32 * 1024 * 1024;
+    
+    private static final IpBlock END = new IpBlock(new int[0], 0, 0, -1);
+    
+    private final HostBlackListsValidator validator;
+    private final int threads;
+    private int blockSize = DEFAULT_BLOCK_SIZE;
+    private int maxInFlight = DEFAULT_MAX_IN_FLIGHT;
+    private int windowBytes = DEFAULT_WINDOW_BYTES;
+    private boolean stopOnAlarm = false;
+    
+    /**
+     * @param validator validador de cada bloque
+     * @param threads número de hilos de checkHosts
+     */
+    public BulkVerdictPipeline(HostBlackListsValidator validator, int threads) {
+        this.validator = validator;
+        this.threads = threads;
+    }
+    
+    /**
+     * @param blockSize IPs que se validan juntas en un barrido de checkHosts
+     */
+    public void setBlockSize(int blockSize) {
+        if (blockSize < 1) {
+            throw new IllegalArgumentException("blockSize must be positive: " + blockSize);
+        }
+        this.blockSize = blockSize;
+    }
+    
+    /**
+     * @param maxInFlight IPs leídas que pueden esperar en la cola a ser
+     * validadas; además hay un bloque en validación y uno en lectura
+     */
+    public void setMaxInFlight(int maxInFlight) {
+        if (maxInFlight < 1) {
+            throw new IllegalArgumentException("maxInFlight must be positive: " + maxInFlight);
+        }
+        this.maxInFlight = maxInFlight;
+    }
+    
+    /**
+     * Tamaño de las ventanas con que se mapea la entrada; ninguna línea puede
+     * ser más larga que una ventana
+     */
+    void setWindowBytes(int windowBytes) {
+        this.windowBytes = windowBytes;
+    }
+    
+    /**
+     * @param stopOnAlarm dejar de revisar una IP al llegar al umbral de alarma
+     */
+    public void setStopOnAlarm(boolean stopOnAlarm) {
+        this.stopOnAlarm = stopOnAlarm;
+    }
+    
+    /**
+     * Valida todas las IPs de input desde donde quedó la ejecución anterior,
+     * si progress existe, o desde el principio.
+     * Cada línea de output es "IP\ttrustworthy|not-trustworthy\tlistas";
+     * las líneas vacías, las que empiezan con '#' y las que no son una IPv4
+     * válida no producen veredicto.
+     * @return número de IPs validadas en esta ejecución
+     * @throws IOException también si progress existe pero output no tiene
+     * todo lo que progress dice que se escribió
+     */
+    public long run(Path input, Path output, Path progress) throws IOException, InterruptedException {
+        long inputOffset = 0;
+        long outputSize = 0;
+        if (Files.exists(progress)) {
+            String[] fields = new String(Files.readAllBytes(progress), StandardCharsets.US_ASCII).trim().split(" ");
+            inputOffset = Long.parseLong(fields[0]);
+            outputSize = Long.parseLong(fields[1]);
+            // Una salida que no llega al progreso guardado perdió veredictos:
+            // seguir dejaría un hueco sin aviso
+            long written = Files.exists(output) ? Files.size(output) : -1;
+            if (written < outputSize) {
+                throw new IOException("Cannot resume " + input + ": " + output
+                        + (written < 0 ? " does not exist" : " has " + written + " bytes")
+                        + " but " + progress + " records " + outputSize
+                        + "; delete " + progress + " to start over");
+            }
+            // Lo escrito después del último progreso guardado se vuelve a escribir
+            try (FileChannel channel = FileChannel.open(output, StandardOpenOption.WRITE)) {
+                channel.truncate(outputSize);
+            }
+            LOG.log(Level.INFO, "Resuming {0} at byte {1}", new Object[]{input, inputOffset});
+        }
+        
+        BlockingQueue<IpBlock> queue = new ArrayBlockingQueue<>(Math.max(1, maxInFlight / blockSize));
+        IpFileReader reader = new IpFileReader(input, inputOffset, queue);
+        Thread readerThread = new Thread(reader, "bulk-verdict-reader");
+        readerThread.setDaemon(true);
+        readerThread.start();
+        
+        long validated = 0;
+        long invalid = 0;
+        try (BufferedWriter out = Files.newBufferedWriter(output, StandardCharsets.US_ASCII,
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                outputSize > 0 ? StandardOpenOption.APPEND : StandardOpenOption.TRUNCATE_EXISTING)) {
+            IpBlock block;
+            while ((block = queue.take()) != END) {
+                List<String> hosts = new ArrayList<>(block.size);
+                for (int i = 0; i < block.size; i++) {
+                    hosts.add(IpAddresses.unpack(block.ips[i]));
+                }
+                if (!hosts.isEmpty()) {
+                    Map<String, HostVerdict> verdicts = validator.checkHosts(hosts, threads, stopOnAlarm);
+                    for (String host : hosts) {
+                        writeVerdict(out, verdicts.get(host));
+                    }
+                }
+                out.flush();
+                writeProgress(progress, block.endOffset, Files.size(output));
+                
+                validated += block.size;
+                invalid += block.invalid;
+                LOG.log(Level.INFO, "Validated {0} hosts, up to byte {1} of {2}",
+                        new Object[]{validated, block.endOffset, input});
+            }
+        } finally {
+            readerThread.interrupt();
+            readerThread.join();
+        }
+        if (reader.failure != null) {
+            throw new IOException("Could not read " + input, reader.failure);
+        }
+        
+        Files.deleteIfExists(progress);
+        LOG.log(Level.INFO, "Validated {0} hosts from {1} ({2} invalid lines skipped)",
+                new Object[]{validated, input, invalid});
+        return validated;
+    }
+    
+    private static void writeVerdict(BufferedWriter out, HostVerdict verdict) throws IOException {
+        out.write(verdict.getIpAddress());
+        out.write(verdict.isTrustworthy() ? "\ttrustworthy\t" : "\tnot-trustworthy\t");
+        List<Integer> lists = verdict.getBlackListOcurrences();
+        for (int i = 0; i < lists.size(); i++) {
+            if (i > 0) {
+                out.write(',');
+            }
+            out.write(Integer.toString(lists.get(i)));
+        }
+        out.newLine();
+    }
+    
+    /**
+     * Se escribe en un archivo temporal y se renombra, para que un corte a
+     * mitad de la escritura no deje un progreso ilegible
+     */
+    private static void writeProgress(Path progress, long inputOffset, long outputSize) throws IOException {
+        Path temp = progress.resolveSibling(progress.getFileName() + ".tmp");
+        Files.write(temp, (inputOffset + " " + outputSize + "\n").getBytes(StandardCharsets.US_ASCII));
+        Files.move(temp, progress, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+    
+    /**
+     * IPs empaquetadas de un tramo de líneas de la entrada
+     */
+    private static class IpBlock {
+        
+        private final int[] ips;
+        private final int size;
+        private final int invalid;
+        // Byte de la entrada donde empieza la línea siguiente al bloque
+        private final long endOffset;
+        
+        IpBlock(int[] ips, int size, int invalid, long endOffset) {
+            this.ips = ips;
+            this.size = size;
+            this.invalid = invalid;
+            this.endOffset = endOffset;
+        }
+    }
+    
+    /**
+     * Lee la entrada por ventanas mapeadas en memoria; una línea que queda
+     * cortada al final de una ventana se lee completa en la siguiente.
+     */
+    private class IpFileReader implements Runnable {
+        
+        private final Path input;
+        private final long startOffset;
+        private final BlockingQueue<IpBlock> queue;
+        private volatile Exception failure;
+        
+        private int[] ips = new int[blockSize];
+        private int count = 0;
+        private int invalid = 0;
+        
+        IpFileReader(Path input, long startOffset, BlockingQueue<IpBlock> queue) {
+            this.input = input;
+            this.startOffset = startOffset;
+            this.queue = queue;
+        }
+        
+        @Override
+        public void run() {
+            try {
+                read();
+                queue.put(END);
+            } catch (InterruptedException ex) {
+                // El consumidor terminó antes que la lectura
+            } catch (IOException | RuntimeException ex) {
+                failure = ex;
+                try {
+                    queue.put(END);
+                } catch (InterruptedException interrupted) {
+                    // El consumidor ya no está esperando
+                }
+            }
+        }
+        
+        private void read() throws IOException, InterruptedException {
+            try (FileChannel channel = FileChannel.open(input, StandardOpenOption.READ)) {
+                long size = channel.size();
+                long position = startOffset;
+                while (position < size) {
+                    int length = (int) Math.min(windowBytes, size - position);
+                    boolean lastWindow = position + length == size;
+                    MappedByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+                    
+                    int lineStart = 0;
+                    for (int i = 0; i < length; i++) {
+                        if (window.get(i) == '\n') {
+                            parseLine(window, lineStart, i);
+                            lineStart = i + 1;
+                            if (count == blockSize) {
+                                flush(position + lineStart);
+                            }
+                        }
+                    }
+                    if (lastWindow && lineStart < length) {
+                        parseLine(window, lineStart, length);
+                        lineStart = length;
+                    }
+                    if (lineStart == 0) {
+                        throw new IOException("Line longer than " + windowBytes + " bytes at byte " + position);
+                    }
+                    position += lineStart;
+                }
+                if (count > 0 || invalid > 0) {
+                    flush(position);
+                }
+            }
+        }
+        
+        private void parseLine(MappedByteBuffer window, int from, int to) {
+            while (from < to && isBlank(window.get(from))) {
+                from++;
+            }
+            while (to > from && isBlank(window.get(to - 1))) {
+                to--;
+            }
+            if (from == to || window.get(from) == '#') {
+                return;
+            }
+            long packed = IpAddresses.tryPack(window, from, to);
+            if (packed < 0) {
+                invalid++;
+            } else {
+                ips[count++] = (int) packed;
+            }
+        }
+        
+        private void flush(long endOffset) throws InterruptedException {
+            // Se bloquea mientras la cola esté llena
+            queue.put(new IpBlock(ips, count, invalid, endOffset));
+            ips = new int[blockSize];
+            count = 0;
+            invalid = 0;
+        }
+    }
+    
+    private static boolean isBlank(byte b) {
+        return b == ' ' || b == '\t' || b == '\r';
+    }
+    
+    public static void main(String[] args) throws IOException, InterruptedException {
+        if (args.length < 2 || args.length > 3) {
+            System.err.println("Usage: BulkVerdictPipeline <ips.txt> <verdicts.tsv> [threads]");
+            System.exit(1);
+        }
+        Path input = Paths.get(args[0]);
+        Path output = Paths.get(args[1]);
+        Path progress = Paths.get(args[1] + ".progress");
+        int threads = args.length > 2 ? Integer.parseInt(args[2]) : 100;
+        
+        try (BlackListScanEngine engine = new BlackListScanEngine(ScanStrategy.PLATFORM_POOL, threads)) {
+            BulkVerdictPipeline pipeline = new BulkVerdictPipeline(new HostBlackListsValidator(engine), threads);
+            long validated = pipeline.run(input, output, progress);
+            System.out.println("Validated " + validated + " hosts, verdicts in " + output);
+        }
+    }
+    
+    private static final Logger LOG = Logger.getLogger(BulkVerdictPipeline.class.getName());
+}
@@ -0,0 +1,102 @@
+package edu.eci.arsw.blacklistvalidator;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Reparte las listas negras en trozos pequeños desde un cursor atómico
+ * compartido, de modo que los hilos que terminan antes toman el trabajo
+ * restante en lugar de quedar ociosos. El tamaño del trozo se ajusta a la
+ * latencia medida de isInBlackListServer.
+ */
+public class ChunkScheduler {
+    
+    private static final int MIN_CHUNK_SIZE = 8;
+    private static final int MAX_CHUNK_SIZE = 4096;
+    
+    // Tiempo que se busca que tarde cada trozo
+    private static final long TARGET_CHUNK_NANOS = 5000000L;
+    
+    private final int firstServer;
+    private final int totalServers;
+    private final int workers;
+    private final AtomicInteger cursor;
+    private volatile long probeNanos;
+    
+    /**
+     * @param totalServers número de listas negras a repartir
+     * @param workers número de hilos que piden trozos
+     * @param probeNanos latencia estimada de una consulta, o 0 si no se conoce
+     */
+    public ChunkScheduler(int totalServers, int workers, long probeNanos) {
+        this(0, totalServers, workers, probeNanos);
+    }
+    
+    /**
+     * Reparte sólo las listas [firstServer, totalServers), por ejemplo cuando
+     * las anteriores ya las resolvió el índice local.
+     */
+    public ChunkScheduler(int firstServer, int totalServers, int workers, long probeNanos) {
+        this.firstServer = firstServer;
+        this.cursor = new AtomicInteger(firstServer);
+        this.totalServers = totalServers;
+        this.workers = workers;
+        this.probeNanos = probeNanos;
+    }
+    
+    public int getFirstServer() {
+        return firstServer;
+    }
+    
+    public int getTotalServers() {
+        return totalServers;
+    }
+    
+    /**
+     * Tamaño del siguiente trozo: el que tarda TARGET_CHUNK_NANOS según la
+     * latencia medida, sin pasar de la mitad de lo que le queda a cada hilo
+     * para que el final de la búsqueda quede bien repartido.
+     */
+    public int chunkSize() {
+        long latency = probeNanos;
+        long byLatency = latency == 0 ? MIN_CHUNK_SIZE : TARGET_CHUNK_NANOS / latency;
+        long byBalance = (totalServers - cursor.get()) / (2L * workers);
+        long size = Math.min(Math.min(byLatency, byBalance), MAX_CHUNK_SIZE);
+        return (int) Math.max(size, MIN_CHUNK_SIZE);
+    }
+    
+    /**
+     * @return true si todavía quedan listas sin reservar
+     */
+    public boolean hasWork() {
+        return cursor.get() < totalServers;
+    }
+    
+    /**
+     * Reserva size listas a partir del cursor.
+     * @return índice de la primera lista reservada; si es mayor o igual a
+     * getTotalServers() ya no queda trabajo
+     */
+    public int claim(int size) {
+        if (cursor.get() >= totalServers) {
+            return totalServers;
+        }
+        return cursor.getAndAdd(size);
+    }
+    
+    /**
+     * Actualiza la latencia estimada (media móvil exponencial) con lo que
+     * tardó un trozo.
+     */
+    public void recordLatency(long elapsedNanos, int probes) {
+        if (probes == 0) {
+            return;
+        }
+        long sample = elapsedNanos / probes;
+        long previous = probeNanos;
+        probeNanos = previous == 0 ? sample : previous + (sample - previous) / 4;
+    }
+    
+    public long getProbeNanos() {
+        return probeNanos;
+    }
+}
@@ -0,0 +1,115 @@
+package edu.eci.arsw.blacklistvalidator;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Trabajador que pide trozos al ChunkScheduler y los revisa hasta que no
+ * queda trabajo, se alcanza el umbral de alarma o se cancela la búsqueda.
+ */
+public class ChunkWorker implements Runnable {
+    
+    private final ChunkScheduler scheduler;
+    private final String ipAddress;
+    private final BlacklistDataSource skds;
+    private final ScanControl control;
+    private final AdaptiveScan adaptiveScan;
+    private final List<BlackListSegment> chunks = new ArrayList<>();
+    private volatile long finishNanos;
+    private volatile boolean retired = false;
+    
+    public ChunkWorker(ChunkScheduler scheduler, String ipAddress,
+                       BlacklistDataSource skds, ScanControl control) {
+        this(scheduler, ipAddress, skds, control, null);
+    }
+    
+    /**
+     * @param adaptiveScan búsqueda adaptativa a la que se informa cada trozo,
+     * o null si el número de trabajadores es fijo
+     */
+    ChunkWorker(ChunkScheduler scheduler, String ipAddress,
+                BlacklistDataSource skds, ScanControl control,
+                AdaptiveScan adaptiveScan) {
+        this.scheduler = scheduler;
+        this.ipAddress = ipAddress;
+        this.skds = skds;
+        this.control = control;
+        this.adaptiveScan = adaptiveScan;
+    }
+    
+    @Override
+    public void run() {
+        int totalServers = scheduler.getTotalServers();
+        while (!control.shouldStop()) {
+            int size = scheduler.chunkSize();
+            int start = scheduler.claim(size);
+            if (start >= totalServers) {
+                break;
+            }
+            int end = Math.min(start + size, totalServers) - 1;
+            
+            BlackListSegment chunk = new BlackListSegment(start, end, ipAddress, skds, control);
+            long begin = System.nanoTime();
+            chunk.run();
+            long elapsed = System.nanoTime() - begin;
+            scheduler.recordLatency(elapsed, chunk.getCheckedListsCount());
+            chunks.add(chunk);
+            
+            if (adaptiveScan != null && !adaptiveScan.afterChunk(elapsed, chunk.getCheckedListsCount())) {
+                retired = true;
+                break;
+            }
+        }
+        finishNanos = System.nanoTime();
+    }
+    
+    /**
+     * @return trozos revisados por este trabajador, en el orden en que los tomó
+     */
+    public List<BlackListSegment> getChunks() {
+        return chunks;
+    }
+    
+    /**
+     * @return true si el trabajador se retiró antes de acabar el trabajo
+     * porque la búsqueda adaptativa redujo el número de hilos
+     */
+    public boolean isRetired() {
+        return retired;
+    }
+    
+    /**
+     * @return momento (System.nanoTime) en que el trabajador terminó
+     */
+    public long getFinishNanos() {
+        return finishNanos;
+    }
+    
+    /**
+     * @return tiempo entre el primer y el último trabajador en terminar; con
+     * trozos bien repartidos debería ser cercano a un trozo
+     */
+    public static long finishSpreadNanos(List<ChunkWorker> workers) {
+        long first = Long.MAX_VALUE;
+        long last = Long.MIN_VALUE;
+        for (ChunkWorker worker : workers) {
+            first = Math.min(first, worker.getFinishNanos());
+            last = Math.max(last, worker.getFinishNanos());
+        }
+        return workers.isEmpty() ? 0 : last - first;
+    }
+    
+    /**
+     * Junta los trozos de todos los trabajadores ordenados por índice de
+     * lista negra, que es el orden en que checkHost entrega las ocurrencias.
+     */
+    public static List<BlackListSegment> collectChunks(List<ChunkWorker> workers) {
+        List<BlackListSegment> all = new ArrayList<>();
+        for (ChunkWorker worker : workers) {
+            all.addAll(worker.getChunks());
+        }
+        all.sort(Comparator.comparingInt(BlackListSegment::getStartIndex));
+        return all;
+    }
+}
@@ -0,0 +1,106 @@
+package edu.eci.arsw.blacklistvalidator;
+
+/**
+ * Límite adaptativo de hilos para las búsquedas, calculado con el gradiente
+ * de latencia (como los limitadores de concurrencia adaptativos): se
+ * compara la latencia reciente de isInBlackListServer con la latencia de
+ * referencia de largo plazo. Mientras la latencia reciente no suba más de
+ * TOLERANCE veces la de referencia el límite crece en raíz(límite); cuando
+ * sube, el límite se reduce en proporción, porque más hilos ya no aumentan
+ * las listas revisadas por segundo y sólo agregan cambios de contexto y
+ * memoria. El límite nunca sale de [floor, ceiling].
+ */
+public class ConcurrencyLimiter {
+    
+    private static final double TOLERANCE = 1.5;
+    private static final double MIN_GRADIENT = 0.5;
+    private static final double SMOOTHING = 0.2;
+    private static final int SHORT_WINDOW = 10;
+    private static final int LONG_WINDOW = 200;
+    
+    private final int floor;
+    private final int ceiling;
+    
+    // Protegidos por this
+    private double limit;
+    private double shortLatency = 0;
+    private double longLatency = 0;
+    
+    /**
+     * @param floor mínimo número de hilos
+     * @param ceiling máximo número de hilos
+     */
+    public ConcurrencyLimiter(int floor, int ceiling) {
+        if (floor < 1 || ceiling < floor) {
+            throw new IllegalArgumentException("Invalid limits [" + floor + ", " + ceiling + "]");
+        }
+        this.floor = floor;
+        this.ceiling = ceiling;
+        this.limit = Math.max(floor, Math.min(ceiling, 2 * Runtime.getRuntime().availableProcessors()));
+    }
+    
+    public int getFloor() {
+        return floor;
+    }
+    
+    public int getCeiling() {
+        return ceiling;
+    }
+    
+    /**
+     * @return número de hilos que deberían estar buscando ahora
+     */
+    public synchronized int getLimit() {
+        return (int) limit;
+    }
+    
+    /**
+     * Ajusta el límite con lo que tardó un trozo de la búsqueda.
+     * @param elapsedNanos tiempo del trozo
+     * @param probes consultas a la fachada del trozo
+     * @param inFlight hilos buscando cuando terminó el trozo
+     */
+    public synchronized void recordSample(long elapsedNanos, int probes, int inFlight) {
+        if (probes == 0) {
+            return;
+        }
+        double sample = (double) elapsedNanos / probes;
+        if (longLatency == 0) {
+            shortLatency = sample;
+            longLatency = sample;
+        } else {
+            shortLatency += (sample - shortLatency) / SHORT_WINDOW;
+            // Con la latencia por encima de la tolerancia la referencia no se
+            // mueve: si la siguiera, un límite demasiado alto terminaría
+            // pareciendo normal. En el piso la latencia alta ya no se debe a
+            // los hilos, y la referencia vuelve a seguirla
+            if (shortLatency <= TOLERANCE * longLatency || limit <= floor) {
+                longLatency += (sample - longLatency) / LONG_WINDOW;
+            }
+            // Un trozo más rápido que la referencia muestra lo que tardan las
+            // consultas sin carga; así un primer trozo lento (hilos nuevos,
+            // código sin compilar) no deja una referencia alta
+            if (sample < longLatency) {
+                longLatency = sample;
+            }
+        }
+        // La referencia no debe quedar por encima de lo que se observa ahora,
+        // para que un pico pasado no haga ver buena una latencia alta
+        if (longLatency > shortLatency) {
+            longLatency = shortLatency;
+        }
+        
+        double gradient = Math.max(MIN_GRADIENT, Math.min(1.0, TOLERANCE * longLatency / shortLatency));
+        // Sólo se crece si los hilos actuales están usando el límite
+        double growth = inFlight >= limit / 2 ? Math.sqrt(limit) : 0;
+        double target = limit * gradient + growth;
+        limit = limit * (1 - SMOOTHING) + target * SMOOTHING;
+        limit = Math.max(floor, Math.min(ceiling, limit));
+    }
+    
+    @Override
+    public synchronized String toString() {
+        return String.format("limit=%d [%d, %d] latency short=%.0fns long=%.0fns",
+                (int) limit, floor, ceiling, shortLatency, longLatency);
+    }
+}
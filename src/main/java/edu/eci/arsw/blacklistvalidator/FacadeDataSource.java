@@ -0,0 +1,35 @@
+package edu.eci.arsw.blacklistvalidator;
+
+import edu.eci.arsw.spamkeywordsdatasource.HostBlacklistsDataSourceFacade;
+
+/**
+ * BlacklistDataSource que delega en HostBlacklistsDataSourceFacade
+ */
+public class FacadeDataSource implements BlacklistDataSource {
+    
+    private final HostBlacklistsDataSourceFacade skds;
+    
+    public FacadeDataSource(HostBlacklistsDataSourceFacade skds) {
+        this.skds = skds;
+    }
+    
+    @Override
+    public int getRegisteredServersCount() {
+        return skds.getRegisteredServersCount();
+    }
+    
+    @Override
+    public boolean isInBlackListServer(int serverNumber, String ipaddress) {
+        return skds.isInBlackListServer(serverNumber, ipaddress);
+    }
+    
+    @Override
+    public void reportAsTrustworthy(String host) {
+        skds.reportAsTrustworthy(host);
+    }
+    
+    @Override
+    public void reportAsNotTrustworthy(String host) {
+        skds.reportAsNotTrustworthy(host);
+    }
+}
@@ -0,0 +1,331 @@
+package edu.eci.arsw.blacklistvalidator;
+
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Decorador de BlacklistDataSource que repite ("hedge") las consultas
+ * lentas: si una consulta tarda más que el percentil dado de las latencias
+ * recientes, se lanza la misma consulta en otro hilo y se usa la primera
+ * respuesta; la otra se descarta. Así unas pocas listas negras lentas no
+ * retrasan todo el segmento que las contiene.
+ *
+ * Las consultas repetidas no pueden pasar de budget veces el total de
+ * consultas (más unas pocas al empezar), para acotar la carga extra sobre
+ * las listas. Mientras no se conoce el percentil (la primera ventana de
+ * WINDOW consultas) no se repite nada y las consultas corren en el hilo que
+ * las pide.
+ *
+ * Después, la consulta original y su copia son dos tareas del pool del
+ * decorador, y el hilo que pide la consulta espera la primera respuesta. Un
+ * solo hilo barre cada cierto tiempo las consultas en curso y lanza la copia
+ * sólo de las que ya pasaron el umbral. La consulta que pierde no se
+ * interrumpe: termina en el pool y su respuesta se ignora. Por eso el pool
+ * tiene un máximo de hilos; si está lleno, la original corre en el hilo que
+ * la pide, sin copia, y una copia que no cabe se cuenta en ScanMetrics como
+ * copia rechazada.
+ *
+ * La espera del hilo que pide la consulta sí se puede interrumpir: se
+ * descarta la consulta (no se lanza su copia), se conserva la marca de
+ * interrupción y se lanza IllegalStateException. La original no corre en el
+ * hilo que la pide porque entonces éste no podría volver con la respuesta
+ * de la copia antes de que la original termine.
+ */
+public class HedgedDataSource implements BlacklistDataSource, AutoCloseable {
+    
+    // Consultas con las que se recalcula el umbral
+    private static final int WINDOW = 1000;
+    // Consultas repetidas permitidas además del presupuesto proporcional
+    private static final int BURST = 10;
+    private static final int DEFAULT_MAX_THREADS = 1024;
+    // Barridos por cada umbral, y el intervalo mínimo entre barridos
+    private static final int SWEEPS_PER_THRESHOLD = 4;
+    private static final long MIN_SWEEP_NANOS = 200000;
+    // Intervalo entre barridos mientras no se conoce el umbral
+    private static final long IDLE_SWEEP_NANOS = 10000000;
+    
+    private final BlacklistDataSource delegate;
+    private final double percentile;
+    private final double budget;
+    private final ThreadPoolExecutor probes;
+    private final ScheduledExecutorService sweeper;
+    private final Set<Probe> inFlight = ConcurrentHashMap.newKeySet();
+    
+    private volatile LatencyHistogram window = new LatencyHistogram();
+    private final AtomicLong windowSamples = new AtomicLong(0);
+    private volatile long thresholdNanos = 0;
+    
+    private final LongAdder probeCount = new LongAdder();
+    private final AtomicLong hedgeCount = new AtomicLong(0);
+    private final LongAdder hedgeWinCount = new LongAdder();
+    private final LongAdder rejectedHedgeCount = new LongAdder();
+    private final AtomicBoolean poolFullLogged = new AtomicBoolean(false);
+    
+    /**
+     * @param delegate listas negras a consultar
+     * @param percentile percentil de latencia (entre 0 y 100) a partir del
+     * cual se repite una consulta, p. ej. 95
+     * @param budget fracción máxima de consultas repetidas, p. ej. 0.05
+     */
+    public HedgedDataSource(BlacklistDataSource delegate, double percentile, double budget) {
+        this(delegate, percentile, budget, DEFAULT_MAX_THREADS);
+    }
+    
+    /**
+     * @param maxThreads máximo de hilos del pool de consultas, contando las
+     * que perdieron y todavía no responden
+     */
+    public HedgedDataSource(BlacklistDataSource delegate, double percentile, double budget, int maxThreads) {
+        if (percentile <= 0 || percentile >= 100) {
+            throw new IllegalArgumentException("percentile must be in (0, 100): " + percentile);
+        }
+        if (budget < 0) {
+            throw new IllegalArgumentException("budget must not be negative: " + budget);
+        }
+        if (maxThreads < 1) {
+            throw new IllegalArgumentException("maxThreads must be positive: " + maxThreads);
+        }
+        this.delegate = delegate;
+        this.percentile = percentile;
+        this.budget = budget;
+        this.probes = new ThreadPoolExecutor(0, maxThreads, 60L, TimeUnit.SECONDS,
+                new SynchronousQueue<Runnable>(), BlackListScanEngine.namedDaemonThreads("blacklist-hedge"));
+        this.sweeper = Executors.newSingleThreadScheduledExecutor(
+                BlackListScanEngine.namedDaemonThreads("blacklist-hedge-sweeper"));
+        this.sweeper.schedule(this::sweep, IDLE_SWEEP_NANOS, TimeUnit.NANOSECONDS);
+    }
+    
+    @Override
+    public int getRegisteredServersCount() {
+        return delegate.getRegisteredServersCount();
+    }
+    
+    @Override
+    public boolean isInBlackListServer(final int serverNumber, final String ipaddress) {
+        probeCount.increment();
+        if (thresholdNanos == 0) {
+            return timedProbe(serverNumber, ipaddress);
+        }
+        
+        final Probe probe = new Probe(serverNumber, ipaddress);
+        inFlight.add(probe);
+        try {
+            probes.execute(probe::runPrimary);
+        } catch (RejectedExecutionException full) {
+            inFlight.remove(probe);
+            return timedProbe(serverNumber, ipaddress);
+        }
+        try {
+            return probe.answer.get();
+        } catch (InterruptedException ex) {
+            // Sin copia; la original termina en el pool y se ignora
+            inFlight.remove(probe);
+            probe.answer.cancel(false);
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while probing server " + serverNumber, ex);
+        } catch (ExecutionException ex) {
+            Throwable cause = ex.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IllegalStateException(cause);
+        }
+    }
+    
+    @Override
+    public void reportAsTrustworthy(String host) {
+        delegate.reportAsTrustworthy(host);
+    }
+    
+    @Override
+    public void reportAsNotTrustworthy(String host) {
+        delegate.reportAsNotTrustworthy(host);
+    }
+    
+    /**
+     * @return consultas pedidas al decorador
+     */
+    public long getProbeCount() {
+        return probeCount.sum();
+    }
+    
+    /**
+     * @return consultas repetidas
+     */
+    public long getHedgeCount() {
+        return hedgeCount.get();
+    }
+    
+    /**
+     * @return consultas repetidas cuya copia respondió primero
+     */
+    public long getHedgeWinCount() {
+        return hedgeWinCount.sum();
+    }
+    
+    /**
+     * @return copias que no se lanzaron porque el pool estaba lleno
+     */
+    public long getRejectedHedgeCount() {
+        return rejectedHedgeCount.sum();
+    }
+    
+    /**
+     * @return latencia a partir de la cual se repite una consulta, o 0 si
+     * todavía no se conoce
+     */
+    public long getHedgeThresholdNanos() {
+        return thresholdNanos;
+    }
+    
+    /**
+     * Detiene los hilos del decorador; las consultas en curso terminan
+     */
+    @Override
+    public void close() {
+        sweeper.shutdownNow();
+        probes.shutdown();
+    }
+    
+    /**
+     * Reserva una consulta repetida si cabe en el presupuesto; la reserva es
+     * atómica para que varias consultas lentas a la vez no lo excedan
+     */
+    private boolean reserveHedge() {
+        while (true) {
+            long hedges = hedgeCount.get();
+            if (hedges >= budget * probeCount.sum() + BURST) {
+                return false;
+            }
+            if (hedgeCount.compareAndSet(hedges, hedges + 1)) {
+                return true;
+            }
+        }
+    }
+    
+    /**
+     * Lanza la copia de las consultas en curso que ya pasaron el umbral y
+     * programa el siguiente barrido. Cada consulta se considera una sola
+     * vez: si no cabe en el presupuesto o en el pool, sigue sin copia.
+     */
+    private void sweep() {
+        long threshold = thresholdNanos;
+        if (threshold > 0) {
+            long now = System.nanoTime();
+            for (Probe probe : inFlight) {
+                if (now - probe.startNanos >= threshold) {
+                    inFlight.remove(probe);
+                    if (!probe.answer.isDone() && reserveHedge()) {
+                        probe.hedge();
+                    }
+                }
+            }
+        }
+        long delay = threshold == 0 ? IDLE_SWEEP_NANOS
+                : Math.max(MIN_SWEEP_NANOS, threshold / SWEEPS_PER_THRESHOLD);
+        try {
+            sweeper.schedule(this::sweep, delay, TimeUnit.NANOSECONDS);
+        } catch (RejectedExecutionException closed) {
+            // El decorador se cerró
+        }
+    }
+    
+    /**
+     * Una consulta original y, si tardó más que el umbral, su copia. Las dos
+     * corren en el pool; la primera que responde completa answer.
+     */
+    private final class Probe {
+        
+        private final int serverNumber;
+        private final String ipaddress;
+        private final long startNanos = System.nanoTime();
+        private final CompletableFuture<Boolean> answer = new CompletableFuture<>();
+        
+        Probe(int serverNumber, String ipaddress) {
+            this.serverNumber = serverNumber;
+            this.ipaddress = ipaddress;
+        }
+        
+        void runPrimary() {
+            try {
+                answer.complete(timedProbe(serverNumber, ipaddress));
+            } catch (Throwable ex) {
+                answer.completeExceptionally(ex);
+            } finally {
+                inFlight.remove(this);
+            }
+        }
+        
+        /**
+         * Corre en el hilo del barrido, con la copia ya reservada
+         */
+        void hedge() {
+            try {
+                probes.execute(this::runHedge);
+            } catch (RejectedExecutionException full) {
+                hedgeCount.decrementAndGet();
+                rejectedHedgeCount.increment();
+                ScanMetrics.getInstance().recordRejectedHedge();
+                if (poolFullLogged.compareAndSet(false, true)) {
+                    LOG.log(Level.WARNING, "Hedge pool is full ({0} threads); slow probes are not hedged",
+                            probes.getMaximumPoolSize());
+                }
+            }
+        }
+        
+        /**
+         * Si la copia falla, la respuesta queda a cargo de la original
+         */
+        private void runHedge() {
+            try {
+                if (answer.complete(timedProbe(serverNumber, ipaddress))) {
+                    hedgeWinCount.increment();
+                }
+            } catch (RuntimeException ex) {
+                LOG.log(Level.FINE, "Hedged probe of server " + serverNumber + " failed", ex);
+            }
+        }
+    }
+    
+    /**
+     * Sólo se mide la consulta que responde; una que falla no cuenta para el
+     * umbral
+     */
+    private boolean timedProbe(int serverNumber, String ipaddress) {
+        long begin = System.nanoTime();
+        boolean found = delegate.isInBlackListServer(serverNumber, ipaddress);
+        recordLatency(System.nanoTime() - begin);
+        return found;
+    }
+    
+    /**
+     * Cada WINDOW consultas el umbral pasa a ser el percentil de la ventana
+     * que terminó, de modo que sigue los cambios de latencia de las listas
+     */
+    private void recordLatency(long elapsedNanos) {
+        window.record(elapsedNanos);
+        if (windowSamples.incrementAndGet() % WINDOW == 0) {
+            LatencyHistogram full = window;
+            window = new LatencyHistogram();
+            thresholdNanos = Math.max(1, full.getPercentile(percentile));
+        }
+    }
+    
+    private static final Logger LOG = Logger.getLogger(HedgedDataSource.class.getName());
+}
@@ -1,7 +1,29 @@
 package edu.eci.arsw.blacklistvalidator;
 
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.function.Supplier;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -12,66 +34,702 @@ import edu.eci.arsw.spamkeywordsdatasource.HostBlacklistsDataSourceFacade;
  */
 public class HostBlackListsValidator {
     
-    private static final int BLACK_LIST_ALARM_COUNT = 5;
+    static final int BLACK_LIST_ALARM_COUNT = 5;
+    
+    /**
+     * Value of N that lets the validator's ConcurrencyLimiter choose, and
+     * keep adjusting during the search, the number of threads.
+     */
+    public static final int ADAPTIVE_THREADS = 0;
+    
+    private static final int DEFAULT_THREADS_FLOOR = 1;
+    private static final int DEFAULT_THREADS_CEILING = 500;
+    
+    // Edad a partir de la cual el índice local se deja de usar
+    private static final long DEFAULT_MAX_INDEX_AGE_MILLIS = TimeUnit.DAYS.toMillis(1);
+    
+    // Búsquedas de checkHostAsync que corren a la vez, y las que pueden
+    // esperar su turno; con la cola llena se rechazan
+    private static final int MAX_ASYNC_SCANS = 64;
+    private static final int MAX_QUEUED_ASYNC_SCANS = 4096;
+    
+    // Hilos que coordinan las búsquedas de checkHostAsync y el que vence
+    // sus plazos; ambos son daemon para no impedir que la JVM termine
+    private static final ThreadPoolExecutor ASYNC_SCANS = newAsyncScans();
+    private static final ScheduledExecutorService DEADLINES =
+            Executors.newSingleThreadScheduledExecutor(BlackListScanEngine.namedDaemonThreads("blacklist-deadline"));
+    
+    private final BlackListScanEngine engine;
+    
+    // Latencia por consulta medida en la última búsqueda, para que la
+    // siguiente empiece con trozos del tamaño adecuado
+    private volatile long probeNanos = 0;
+    
+    private volatile VerdictCache verdictCache;
+    
+    private volatile BlacklistIndex localIndex;
+    
+    private volatile long maxIndexAgeMillis = DEFAULT_MAX_INDEX_AGE_MILLIS;
+    
+    private volatile BlacklistDataSource dataSource =
+            new FacadeDataSource(HostBlacklistsDataSourceFacade.getInstance());
+    
+    private volatile ConcurrencyLimiter concurrencyLimiter =
+            new ConcurrencyLimiter(DEFAULT_THREADS_FLOOR, DEFAULT_THREADS_CEILING);
+    
+    /**
+     * Validator that starts N new threads on every checkHost call.
+     */
+    public HostBlackListsValidator() {
+        this(null);
+    }
+    
+    /**
+     * Validator that runs every search on the given long-lived engine.
+     * The engine is not closed by the validator.
+     * @param engine engine shared across checkHost calls, or null to start
+     * new threads on every call
+     */
+    public HostBlackListsValidator(BlackListScanEngine engine) {
+        this.engine = engine;
+    }
+    
+    /**
+     * Replaces the source of the black lists, e.g. with a HedgedDataSource
+     * that wraps the current one. Hosts are also reported to this source.
+     * @param dataSource black lists to check; by default the
+     * HostBlacklistsDataSourceFacade
+     */
+    public void setDataSource(BlacklistDataSource dataSource) {
+        this.dataSource = dataSource;
+    }
+    
+    public BlacklistDataSource getDataSource() {
+        return dataSource;
+    }
+    
+    /**
+     * Puts a verdict cache in front of the scans: a cached verdict is
+     * returned (and reported) without checking the black lists again.
+     * @param verdictCache cache to use, or null to always scan
+     */
+    public void setVerdictCache(VerdictCache verdictCache) {
+        this.verdictCache = verdictCache;
+    }
+    
+    public VerdictCache getVerdictCache() {
+        return verdictCache;
+    }
+    
+    /**
+     * Uses a compiled local index for the black lists it covers; only the
+     * lists newer than the index are checked through the facade. The index
+     * is authoritative for the lists it covers: a host listed there after
+     * the index was compiled is not found until the index is recompiled.
+     * An index that covers more lists than the data source has, or that is
+     * older than the maximum index age, is dropped on the next search.
+     * @param localIndex index to use, or null to check every list through
+     * the facade
+     */
+    public void setLocalIndex(BlacklistIndex localIndex) {
+        this.localIndex = localIndex;
+    }
+    
+    public BlacklistIndex getLocalIndex() {
+        return localIndex;
+    }
+    
+    /**
+     * Opens the index file and uses it as the local index when it is valid,
+     * does not cover more black lists than the data source has and is not
+     * older than the maximum index age; in any other case every list keeps
+     * being checked through the data source. Like setLocalIndex, the index
+     * replaces the data source for the lists it covers.
+     * @param indexFile file compiled by BlacklistIndexCompiler
+     * @return true if the index is now in use
+     */
+    public boolean loadLocalIndex(Path indexFile) {
+        BlacklistIndex index;
+        try {
+            index = BlacklistIndex.open(indexFile);
+        } catch (IOException ex) {
+            LOG.log(Level.WARNING, "Ignoring black list index " + indexFile, ex);
+            return false;
+        }
+        if (!isUsable(index, dataSource.getRegisteredServersCount())) {
+            return false;
+        }
+        localIndex = index;
+        return true;
+    }
+    
+    /**
+     * Sets how old (since its snapshot was taken) the local index may be
+     * before it stops being used; 1 day by default.
+     */
+    public void setMaxLocalIndexAge(long maxAge, TimeUnit unit) {
+        if (maxAge <= 0) {
+            throw new IllegalArgumentException("maxAge must be positive: " + maxAge);
+        }
+        this.maxIndexAgeMillis = unit.toMillis(maxAge);
+    }
+    
+    /**
+     * Replaces the limiter used when N is ADAPTIVE_THREADS, e.g. to change
+     * its floor and ceiling. With an engine, the ceiling should not exceed
+     * the engine's parallelism.
+     */
+    public void setConcurrencyLimiter(ConcurrencyLimiter concurrencyLimiter) {
+        this.concurrencyLimiter = concurrencyLimiter;
+    }
+    
+    public ConcurrencyLimiter getConcurrencyLimiter() {
+        return concurrencyLimiter;
+    }
+    
+    /**
+     * Same as checkHost(ipaddress, ADAPTIVE_THREADS): the number of threads
+     * follows the observed latency of the black lists instead of being
+     * given by the caller.
+     * @param ipaddress suspicious host's IP address.
+     * @return Blacklists numbers where the given host's IP address was found.
+     */
+    public List<Integer> checkHost(String ipaddress) {
+        return checkHost(ipaddress, ADAPTIVE_THREADS);
+    }
     
     /**
      * Check the given host's IP address in all the available black lists,
      * and report it as NOT Trustworthy when such IP was reported in at least
      * BLACK_LIST_ALARM_COUNT lists, or as Trustworthy in any other case.
-     * The search is done in parallel using N threads.
+     * The search is done in parallel using N threads (on the validator's
+     * engine when it has one) that take small chunks of black lists from a
+     * shared ChunkScheduler until no lists are left.
      * @param ipaddress suspicious host's IP address.
-     * @param N number of threads to use for the search
+     * @param N number of threads to use for the search, or ADAPTIVE_THREADS
      * @return Blacklists numbers where the given host's IP address was found.
      */
     public List<Integer> checkHost(String ipaddress, int N) {
+        return checkHost(ipaddress, N, false);
+    }
+    
+    /**
+     * Check the given host's IP address in all the available black lists.
+     * When stopOnAlarm is true the N threads share a global hit counter and
+     * all of them stop as soon as BLACK_LIST_ALARM_COUNT occurrences were
+     * found, so only part of the black lists may be checked and only the
+     * occurrences found up to that point are returned.
+     * @param ipaddress suspicious host's IP address.
+     * @param N number of threads to use for the search, or ADAPTIVE_THREADS
+     * @param stopOnAlarm stop every thread once the alarm threshold is reached
+     * @return Blacklists numbers where the given host's IP address was found.
+     * @throws IllegalArgumentException if the validator has a verdict cache
+     * and ipaddress is not a canonical IPv4 address
+     */
+    public List<Integer> checkHost(String ipaddress, int N, boolean stopOnAlarm) {
+        HostVerdict verdict = verdictCache == null
+                ? scanHost(ipaddress, N, newScanControl(stopOnAlarm))
+                : cachedVerdict(ipaddress, N, stopOnAlarm);
+        
+        report(verdict);
+        
+        return new LinkedList<>(verdict.getBlackListOcurrences());
+    }
+    
+    /**
+     * Check the given host's IP address in the background. The returned
+     * future can be cancelled, which stops every worker of the search after
+     * its current probe. When options has a deadline and it expires before
+     * the search ends, the workers are stopped the same way and the future
+     * completes with a partial verdict: it tells how many lists were checked
+     * and whether the alarm threshold was already reached. Only decided
+     * verdicts are reported to the data source, and only complete ones are
+     * kept in the cache.
+     * With a verdict cache, concurrent calls for the same uncached host,
+     * synchronous or not, share one search; a call whose deadline expires
+     * while it waits for another call's search completes with a partial
+     * verdict of no checked lists. At most MAX_ASYNC_SCANS searches run at
+     * once and the rest wait in a bounded queue.
+     * @param ipaddress suspicious host's IP address.
+     * @param options threads, early stop and deadline of the search
+     * @return future verdict of the host; it completes exceptionally with a
+     * RejectedExecutionException when too many searches are waiting
+     * @throws IllegalArgumentException if the validator has a verdict cache
+     * and ipaddress is not a canonical IPv4 address
+     */
+    public CompletableFuture<HostVerdict> checkHostAsync(final String ipaddress, final ScanOptions options) {
+        final CompletableFuture<HostVerdict> result = new CompletableFuture<>();
+        final VerdictCache cache = verdictCache;
+        final int key = cache == null ? 0 : IpAddresses.pack(ipaddress);
+        
+        HostVerdict cached = cache == null ? null : cache.getIfPresent(key);
+        if (cached != null) {
+            report(cached);
+            result.complete(cached);
+            return result;
+        }
+        
+        final ScanControl control = newScanControl(options.isStopOnAlarm());
+        // Sigue en false mientras la llamada espera su turno o la búsqueda
+        // de otra llamada
+        final AtomicBoolean scanning = new AtomicBoolean(false);
+        result.whenComplete((verdict, ex) -> {
+            if (result.isCancelled()) {
+                control.cancel();
+            }
+        });
+        if (options.hasDeadline()) {
+            final ScheduledFuture<?> deadline = DEADLINES.schedule(() -> {
+                control.cancel();
+                if (!scanning.get()) {
+                    complete(result, new HostVerdict(ipaddress, true, new ArrayList<Integer>(), 0, true));
+                }
+            }, options.getTimeoutNanos(), TimeUnit.NANOSECONDS);
+            result.whenComplete((verdict, ex) -> deadline.cancel(false));
+        }
+        
+        final Supplier<HostVerdict> scan = () -> {
+            scanning.set(true);
+            return scanHost(ipaddress, options.getThreads(), control);
+        };
+        try {
+            ASYNC_SCANS.execute(() -> {
+                if (result.isDone()) {
+                    return;
+                }
+                try {
+                    complete(result, cache == null ? scan.get()
+                            : sharedVerdict(cache, key, options.isStopOnAlarm(), scan));
+                } catch (RuntimeException | Error ex) {
+                    result.completeExceptionally(ex);
+                }
+            });
+        } catch (RejectedExecutionException ex) {
+            result.completeExceptionally(ex);
+        }
+        return result;
+    }
+    
+    /**
+     * Reports the verdict and completes the future with it, unless the
+     * future was already completed (by its deadline) or cancelled.
+     */
+    private void complete(CompletableFuture<HostVerdict> result, HostVerdict verdict) {
+        if (!result.isDone()) {
+            report(verdict);
+            result.complete(verdict);
+        }
+    }
+    
+    /**
+     * Reports a decided verdict to the data source; partial verdicts are
+     * only counted in the scan metrics.
+     */
+    private void report(HostVerdict verdict) {
+        ScanMetrics.getInstance().recordVerdict(verdict);
+        if (verdict.isPartial()) {
+            return;
+        }
+        BlacklistDataSource skds = dataSource;
+        if (verdict.isTrustworthy()) {
+            skds.reportAsTrustworthy(verdict.getIpAddress());
+        } else {
+            skds.reportAsNotTrustworthy(verdict.getIpAddress());
+        }
+    }
+    
+    private static ScanControl newScanControl(boolean stopOnAlarm) {
+        return stopOnAlarm ? new ScanControl(BLACK_LIST_ALARM_COUNT) : ScanControl.unbounded();
+    }
+    
+    /**
+     * Only complete verdicts are kept in the cache; concurrent calls for the
+     * same uncached host share one scan.
+     */
+    private HostVerdict cachedVerdict(final String ipaddress, final int N, final boolean stopOnAlarm) {
+        VerdictCache cache = verdictCache;
+        int key = IpAddresses.pack(ipaddress);
+        HostVerdict verdict = cache.getIfPresent(key);
+        if (verdict != null) {
+            return verdict;
+        }
+        return sharedVerdict(cache, key, stopOnAlarm,
+                () -> scanHost(ipaddress, N, newScanControl(stopOnAlarm)));
+    }
+    
+    /**
+     * Scans a host missing from the cache through its in-flight loads. A
+     * verdict loaded by another call that cannot answer this one (stopped at
+     * the alarm for a full check, or cut by the other call's deadline) is
+     * replaced by a scan of this call's own.
+     */
+    private HostVerdict sharedVerdict(VerdictCache cache, int key, boolean stopOnAlarm,
+                                      final Supplier<HostVerdict> scan) {
+        final boolean[] loaded = {false};
+        HostVerdict verdict = cache.load(key, k -> {
+            loaded[0] = true;
+            return scan.get();
+        }, this::isCacheable);
+        if (loaded[0] || (!verdict.isPartial() && (stopOnAlarm || isComplete(verdict)))) {
+            return verdict;
+        }
+        verdict = scan.get();
+        if (isCacheable(verdict)) {
+            cache.put(key, verdict);
+        }
+        return verdict;
+    }
+    
+    /**
+     * Partial verdicts and verdicts stopped at the alarm threshold cannot
+     * answer a later full check, so they are never cached.
+     */
+    private boolean isCacheable(HostVerdict verdict) {
+        return !verdict.isPartial() && isComplete(verdict);
+    }
+    
+    /**
+     * A scan stopped at the alarm threshold does not include every
+     * occurrence, so it cannot answer a full check.
+     */
+    private boolean isComplete(HostVerdict verdict) {
+        return verdict.getCheckedListsCount() >= dataSource.getRegisteredServersCount();
+    }
+    
+    /**
+     * Searches the host with N workers that stop when control says so. A
+     * search cancelled before checking every list and before reaching the
+     * alarm threshold gives a partial verdict.
+     */
+    private HostVerdict scanHost(String ipaddress, int N, ScanControl control) {
+        long begin = System.nanoTime();
         LinkedList<Integer> blackListOcurrences = new LinkedList<>();
         int ocurrencesCount = 0;
-        HostBlacklistsDataSourceFacade skds = HostBlacklistsDataSourceFacade.getInstance();
+        BlacklistDataSource skds = dataSource;
         int checkedListsCount = 0;
         
+        // Las listas que cubre el índice local se resuelven sin la fachada
+        BlacklistIndex index = localIndex;
         int totalServers = skds.getRegisteredServersCount();
-        int segmentSize = totalServers / N;
-        int remainder = totalServers % N;
-        
-        BlackListThread[] threads = new BlackListThread[N];
+        int indexedServers = indexedServers(index, totalServers);
+        List<Integer> indexed = indexedOcurrences(index, ipaddress, indexedServers);
+        if (indexed == null) {
+            // Entrada dañada en el índice o IP que no puede buscar: se revisa
+            // toda en la fachada
+            indexedServers = 0;
+            indexed = new ArrayList<>();
+        }
+        for (int server : indexed) {
+            blackListOcurrences.add(server);
+            ocurrencesCount++;
+        }
+        checkedListsCount += indexedServers;
+        control.addOcurrences(ocurrencesCount);
         
-        int start = 0;
-        for (int i = 0; i < N; i++) {
-            int end = start + segmentSize - 1;
-            if (i < remainder) {
-                end++;
+        ConcurrencyLimiter limiter = concurrencyLimiter;
+        boolean adaptive = N == ADAPTIVE_THREADS;
+        ChunkScheduler scheduler = new ChunkScheduler(indexedServers, totalServers,
+                adaptive ? limiter.getLimit() : N, probeNanos);
+        List<BlackListSegment> segments;
+        if (indexedServers >= totalServers || control.shouldStop()) {
+            segments = new ArrayList<>();
+        } else if (adaptive) {
+            segments = new AdaptiveScan(scheduler, ipaddress, skds, control, limiter,
+                    engine != null ? engine::execute : newThreadPerWorker()).run();
+        } else if (engine != null) {
+            segments = engine.scan(ipaddress, N, skds, scheduler, control);
+        } else {
+            List<ChunkWorker> workers = new ArrayList<>(N);
+            for (int i = 0; i < N; i++) {
+                workers.add(new ChunkWorker(scheduler, ipaddress, skds, control));
             }
-            
-            threads[i] = new BlackListThread(start, end, ipaddress, skds);
-            threads[i].start();
-            
-            start = end + 1;
+            runOnNewThreads(workers, control);
+            ScanMetrics.getInstance().recordFinishSpread(ChunkWorker.finishSpreadNanos(workers));
+            segments = ChunkWorker.collectChunks(workers);
+        }
+        probeNanos = scheduler.getProbeNanos();
+        
+        for (BlackListSegment segment : segments) {
+            ocurrencesCount += segment.getOcurrencesCount();
+            blackListOcurrences.addAll(segment.getBlackListOcurrences());
+            checkedListsCount += segment.getCheckedListsCount();
+        }
+        
+        if (index == null) {
+            LOG.log(Level.INFO, "Checked Black Lists:{0} of {1}", 
+                    new Object[]{checkedListsCount, totalServers});
+        } else {
+            LOG.log(Level.INFO, "Checked Black Lists:{0} of {1} ({2} in the local index)",
+                    new Object[]{checkedListsCount, totalServers, indexedServers});
+        }
+        
+        ScanMetrics.getInstance().recordScan(System.nanoTime() - begin, checkedListsCount);
+        
+        boolean trustworthy = ocurrencesCount < BLACK_LIST_ALARM_COUNT;
+        boolean partial = control.isCancelled() && trustworthy && checkedListsCount < totalServers;
+        if (partial) {
+            LOG.log(Level.INFO, "Search of {0} cancelled before a verdict", ipaddress);
         }
         
-        for (int i = 0; i < N; i++) {
+        return new HostVerdict(ipaddress, trustworthy, blackListOcurrences, checkedListsCount, partial);
+    }
+    
+    /**
+     * @return number of black lists, from the first one, that the local
+     * index answers; 0 when the index does not match the data source or is
+     * too old, which also stops using it
+     */
+    private int indexedServers(BlacklistIndex index, int totalServers) {
+        if (index == null) {
+            return 0;
+        }
+        if (!isUsable(index, totalServers)) {
+            if (localIndex == index) {
+                localIndex = null;
+            }
+            return 0;
+        }
+        return index.getServersCount();
+    }
+    
+    /**
+     * An index that covers more black lists than the data source has was
+     * compiled for other lists, and one older than the maximum age may miss
+     * too many new listings: the answers of neither can replace the data
+     * source's.
+     */
+    private boolean isUsable(BlacklistIndex index, int totalServers) {
+        if (index.getServersCount() > totalServers) {
+            LOG.log(Level.WARNING, "Black list index covers {0} lists but the data source has {1}; ignoring it",
+                    new Object[]{index.getServersCount(), totalServers});
+            return false;
+        }
+        long ageMillis = System.currentTimeMillis() - index.getCompiledAtMillis();
+        if (ageMillis > maxIndexAgeMillis) {
+            LOG.log(Level.WARNING, "Black list index is {0} minutes old; ignoring it",
+                    TimeUnit.MILLISECONDS.toMinutes(ageMillis));
+            return false;
+        }
+        return true;
+    }
+    
+    /**
+     * @return ordered black lists numbers, below indexedServers, where the
+     * local index has the given host, or null if the host's entry in the
+     * index is damaged or the host is not a canonical IPv4 address, which
+     * the index cannot look up
+     */
+    private static List<Integer> indexedOcurrences(BlacklistIndex index, String ipaddress, int indexedServers) {
+        List<Integer> ocurrences = new ArrayList<>();
+        if (index != null && indexedServers > 0) {
+            int key;
             try {
-                threads[i].join();
-            } catch (InterruptedException e) {
-                e.printStackTrace();
+                key = IpAddresses.pack(ipaddress);
+            } catch (IllegalArgumentException ex) {
+                LOG.log(Level.FINE, "{0} is not a canonical address; checking it through the data source",
+                        ipaddress);
+                return null;
+            }
+            int[] servers = index.serversOf(key);
+            if (servers == null) {
+                LOG.log(Level.WARNING, "Damaged entry for {0} in the black list index; checking it "
+                        + "through the data source", ipaddress);
+                return null;
+            }
+            for (int server : servers) {
+                if (server < indexedServers) {
+                    ocurrences.add(server);
+                }
+            }
+        }
+        return ocurrences;
+    }
+    
+    /**
+     * Check several hosts' IP addresses with a single sweep over the black
+     * lists: at every black list all the hosts still pending are checked, so
+     * each list is visited once for the whole batch instead of once per host.
+     * Every distinct host is reported exactly once, as NOT Trustworthy or
+     * Trustworthy, following the same rule as checkHost.
+     * @param ipaddresses suspicious hosts' IP addresses; duplicates are
+     * checked once
+     * @param N number of threads to use for the search, or ADAPTIVE_THREADS
+     * to use the ConcurrencyLimiter's current limit for the whole sweep
+     * @param stopOnAlarm stop checking a host once it reaches the alarm
+     * threshold, and the whole sweep once every host is decided
+     * @return verdict of every host, in the order the hosts were given;
+     * hosts that are not canonical IPv4 addresses are checked without the
+     * verdict cache
+     */
+    public Map<String, HostVerdict> checkHosts(Collection<String> ipaddresses, int N, boolean stopOnAlarm) {
+        long begin = System.nanoTime();
+        BlacklistDataSource skds = dataSource;
+        VerdictCache cache = verdictCache;
+        Map<String, HostVerdict> verdicts = new LinkedHashMap<>();
+        List<String> pending = new ArrayList<>();
+        for (String ipaddress : new LinkedHashSet<>(ipaddresses)) {
+            HostVerdict cached = null;
+            long key = cacheKey(ipaddress);
+            if (cache != null && key >= 0) {
+                cached = cache.getIfPresent((int) key);
+            }
+            verdicts.put(ipaddress, cached);
+            if (cached == null) {
+                pending.add(ipaddress);
             }
         }
         
-        for (int i = 0; i < N; i++) {
-            ocurrencesCount += threads[i].getOcurrencesCount();
-            blackListOcurrences.addAll(threads[i].getBlackListOcurrences());
-            checkedListsCount += threads[i].getCheckedListsCount();
+        String[] hosts = pending.toArray(new String[0]);
+        AtomicIntegerArray globalOcurrences = new AtomicIntegerArray(hosts.length);
+        int alarmCount = stopOnAlarm ? BLACK_LIST_ALARM_COUNT : Integer.MAX_VALUE;
+        
+        BlacklistIndex index = localIndex;
+        int totalServers = skds.getRegisteredServersCount();
+        int indexedServers = indexedServers(index, totalServers);
+        List<List<Integer>> indexed = new ArrayList<>(hosts.length);
+        for (int j = 0; j < hosts.length; j++) {
+            List<Integer> ocurrences = indexedOcurrences(index, hosts[j], indexedServers);
+            if (ocurrences == null) {
+                // Todos los hosts comparten el barrido: con una entrada
+                // dañada o una IP no canónica el lote entero se revisa en la
+                // fachada
+                indexedServers = 0;
+                break;
+            }
+            indexed.add(ocurrences);
+        }
+        if (indexedServers == 0) {
+            indexed.clear();
+            for (int j = 0; j < hosts.length; j++) {
+                indexed.add(new ArrayList<Integer>());
+            }
+        }
+        for (int j = 0; j < hosts.length; j++) {
+            globalOcurrences.set(j, indexed.get(j).size());
         }
         
-        if (ocurrencesCount >= BLACK_LIST_ALARM_COUNT) {
-            skds.reportAsNotTrustworthy(ipaddress);
+        if (N == ADAPTIVE_THREADS) {
+            N = concurrencyLimiter.getLimit();
+        }
+        ChunkScheduler scheduler = new ChunkScheduler(indexedServers, totalServers, N, 0);
+        List<BatchChunkWorker> workers = new ArrayList<>(N);
+        for (int i = 0; i < N && hosts.length > 0 && indexedServers < totalServers; i++) {
+            workers.add(new BatchChunkWorker(scheduler, hosts, skds, globalOcurrences, alarmCount));
+        }
+        if (engine != null) {
+            try {
+                engine.runAll(workers);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while checking " + hosts.length + " hosts", ex);
+            } catch (ExecutionException ex) {
+                throw new IllegalStateException("Batch check failed", ex.getCause());
+            }
         } else {
-            skds.reportAsTrustworthy(ipaddress);
+            runOnNewThreads(workers, null);
         }
         
-        LOG.log(Level.INFO, "Checked Black Lists:{0} of {1}", 
-                new Object[]{checkedListsCount, skds.getRegisteredServersCount()});
+        long checkedListsCount = 0;
+        for (int j = 0; j < hosts.length; j++) {
+            List<Integer> blackListOcurrences = new ArrayList<>(indexed.get(j));
+            int hostCheckedLists = indexedServers;
+            for (BatchChunkWorker worker : workers) {
+                blackListOcurrences.addAll(worker.getBlackListOcurrences(j));
+                hostCheckedLists += worker.getCheckedListsCount(j);
+            }
+            Collections.sort(blackListOcurrences);
+            checkedListsCount += hostCheckedLists;
+            
+            HostVerdict verdict = new HostVerdict(hosts[j],
+                    blackListOcurrences.size() < BLACK_LIST_ALARM_COUNT,
+                    blackListOcurrences, hostCheckedLists);
+            long key = cacheKey(hosts[j]);
+            if (cache != null && key >= 0 && isCacheable(verdict)) {
+                cache.put((int) key, verdict);
+            }
+            verdicts.put(hosts[j], verdict);
+        }
+        
+        if (hosts.length > 0) {
+            ScanMetrics.getInstance().recordScan(System.nanoTime() - begin, checkedListsCount);
+        }
+        for (HostVerdict verdict : verdicts.values()) {
+            report(verdict);
+        }
+        
+        LOG.log(Level.INFO, "Checked {0} hosts, Black Lists checks:{1} of {2}",
+                new Object[]{hosts.length, checkedListsCount,
+                    (long) hosts.length * totalServers});
+        
+        return verdicts;
+    }
+    
+    /**
+     * @return the host's key in the verdict cache, or -1 if the host is not
+     * a canonical IPv4 address and cannot be cached
+     */
+    private static long cacheKey(String ipaddress) {
+        try {
+            return IpAddresses.pack(ipaddress) & 0xFFFFFFFFL;
+        } catch (IllegalArgumentException ex) {
+            return -1;
+        }
+    }
+    
+    /**
+     * Same as checkHosts(ipaddresses, N, false): every host is checked in
+     * all the black lists.
+     */
+    public Map<String, HostVerdict> checkHosts(Collection<String> ipaddresses, int N) {
+        return checkHosts(ipaddresses, N, false);
+    }
+    
+    private static ThreadPoolExecutor newAsyncScans() {
+        ThreadPoolExecutor scans = new ThreadPoolExecutor(MAX_ASYNC_SCANS, MAX_ASYNC_SCANS, 60L, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(MAX_QUEUED_ASYNC_SCANS),
+                BlackListScanEngine.namedDaemonThreads("blacklist-async"));
+        scans.allowCoreThreadTimeOut(true);
+        return scans;
+    }
+    
+    /**
+     * Executor that starts a new thread for every task, named like the ones
+     * of runOnNewThreads
+     */
+    private static Executor newThreadPerWorker() {
+        final AtomicInteger count = new AtomicInteger(0);
+        return task -> new Thread(task, "blacklist-worker-" + count.getAndIncrement()).start();
+    }
+    
+    /**
+     * Runs every worker on its own new thread and waits for all of them. If
+     * the calling thread is interrupted the search is cancelled, the workers
+     * are still waited for (they stop after their current probe) and the
+     * interrupt status is restored before returning.
+     * @param control search to cancel on interruption, or null
+     */
+    private static void runOnNewThreads(List<? extends Runnable> workers, ScanControl control) {
+        Thread[] threads = new Thread[workers.size()];
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread(workers.get(i), "blacklist-worker-" + i);
+            threads[i].start();
+        }
         
-        return blackListOcurrences;
+        boolean interrupted = false;
+        for (int i = 0; i < threads.length; ) {
+            try {
+                threads[i].join();
+                i++;
+            } catch (InterruptedException e) {
+                interrupted = true;
+                if (control != null) {
+                    control.cancel();
+                }
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
     }
     
     private static final Logger LOG = Logger.getLogger(HostBlackListsValidator.class.getName());
@@ -0,0 +1,77 @@
+package edu.eci.arsw.blacklistvalidator;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Resultado de validar una IP: si es confiable y en qué listas negras se
+ * encontró. Un resultado parcial (búsqueda cancelada o con plazo vencido)
+ * sólo cubre getCheckedListsCount() listas; en él isTrustworthy() indica
+ * únicamente que el umbral de alarma no se alcanzó en esas listas.
+ */
+public class HostVerdict {
+    
+    private final String ipAddress;
+    private final boolean trustworthy;
+    private final List<Integer> blackListOcurrences;
+    private final int checkedListsCount;
+    private final boolean partial;
+    
+    public HostVerdict(String ipAddress, boolean trustworthy,
+                       List<Integer> blackListOcurrences, int checkedListsCount) {
+        this(ipAddress, trustworthy, blackListOcurrences, checkedListsCount, false);
+    }
+    
+    public HostVerdict(String ipAddress, boolean trustworthy,
+                       List<Integer> blackListOcurrences, int checkedListsCount,
+                       boolean partial) {
+        this.ipAddress = ipAddress;
+        this.trustworthy = trustworthy;
+        this.blackListOcurrences = Collections.unmodifiableList(blackListOcurrences);
+        this.checkedListsCount = checkedListsCount;
+        this.partial = partial;
+    }
+    
+    public String getIpAddress() {
+        return ipAddress;
+    }
+    
+    public boolean isTrustworthy() {
+        return trustworthy;
+    }
+    
+    /**
+     * @return números de las listas negras donde se encontró la IP, en orden
+     */
+    public List<Integer> getBlackListOcurrences() {
+        return blackListOcurrences;
+    }
+    
+    public int getCheckedListsCount() {
+        return checkedListsCount;
+    }
+    
+    /**
+     * @return true si la búsqueda se detuvo antes de decidir: no se revisaron
+     * todas las listas y el umbral de alarma no se había alcanzado
+     */
+    public boolean isPartial() {
+        return partial;
+    }
+    
+    /**
+     * @return true si la IP ya está en suficientes listas para reportarla
+     * como no confiable, aunque el resultado sea parcial
+     */
+    public boolean isAlarmReached() {
+        return !trustworthy;
+    }
+    
+    @Override
+    public String toString() {
+        if (partial) {
+            return ipAddress + " undecided after " + checkedListsCount + " lists " + blackListOcurrences;
+        }
+        return ipAddress + (trustworthy ? " trustworthy " : " NOT trustworthy ") + blackListOcurrences;
+    }
+}
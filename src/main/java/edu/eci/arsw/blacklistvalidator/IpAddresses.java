@@ -0,0 +1,95 @@
+package edu.eci.arsw.blacklistvalidator;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Conversión entre direcciones IPv4 en texto y su forma empaquetada en un
+ * int (el primer octeto en los 8 bits más altos).
+ */
+public final class IpAddresses {
+    
+    private IpAddresses() {
+    }
+    
+    /**
+     * Solo se acepta la forma canónica, sin ceros a la izquierda, para que
+     * cada dirección tenga un único texto (el de unpack).
+     * @param ipaddress dirección IPv4 en notación decimal con puntos
+     * @return la dirección empaquetada en un int
+     * @throws IllegalArgumentException si no es una dirección IPv4 válida
+     */
+    public static int pack(CharSequence ipaddress) {
+        int packed = 0;
+        int octets = 0;
+        int octet = -1;
+        for (int i = 0; i < ipaddress.length(); i++) {
+            char c = ipaddress.charAt(i);
+            if (c >= '0' && c <= '9') {
+                if (octet == 0) {
+                    // Cero a la izquierda: "055" y "55" darían la misma llave
+                    throw invalid(ipaddress);
+                }
+                octet = (octet < 0 ? 0 : octet * 10) + (c - '0');
+                if (octet > 255) {
+                    throw invalid(ipaddress);
+                }
+            } else if (c == '.' && octet >= 0 && octets < 3) {
+                packed = (packed << 8) | octet;
+                octets++;
+                octet = -1;
+            } else {
+                throw invalid(ipaddress);
+            }
+        }
+        if (octet < 0 || octets != 3) {
+            throw invalid(ipaddress);
+        }
+        return (packed << 8) | octet;
+    }
+    
+    /**
+     * Como pack, pero sobre los bytes ASCII [from, to) de un buffer y sin
+     * crear objetos, para leer archivos grandes de IPs.
+     * @return la dirección empaquetada en los 32 bits bajos, o -1 si los
+     * bytes no son una dirección IPv4 válida
+     */
+    static long tryPack(ByteBuffer bytes, int from, int to) {
+        int packed = 0;
+        int octets = 0;
+        int octet = -1;
+        for (int i = from; i < to; i++) {
+            byte c = bytes.get(i);
+            if (c >= '0' && c <= '9') {
+                if (octet == 0) {
+                    return -1;
+                }
+                octet = (octet < 0 ? 0 : octet * 10) + (c - '0');
+                if (octet > 255) {
+                    return -1;
+                }
+            } else if (c == '.' && octet >= 0 && octets < 3) {
+                packed = (packed << 8) | octet;
+                octets++;
+                octet = -1;
+            } else {
+                return -1;
+            }
+        }
+        if (octet < 0 || octets != 3) {
+            return -1;
+        }
+        return ((packed << 8) | octet) & 0xFFFFFFFFL;
+    }
+    
+    /**
+     * @return la dirección en notación decimal con puntos
+     */
+    public static String unpack(int ipaddress) {
+        return (ipaddress >>> 24) + "." + ((ipaddress >>> 16) & 0xFF) + "."
+                + ((ipaddress >>> 8) & 0xFF) + "." + (ipaddress & 0xFF);
+    }
+    
+    private static IllegalArgumentException invalid(CharSequence ipaddress) {
+        return new IllegalArgumentException("Not an IPv4 address: " + ipaddress);
+    }
+}
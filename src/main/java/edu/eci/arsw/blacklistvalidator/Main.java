@@ -18,8 +18,8 @@ public class Main {
         List<Integer> blackLists2 = hblv.checkHost("212.24.24.55", numberOfThreads);
         System.out.println("The host was found in the following blacklists: " + blackLists2);
         
-        System.out.println("\n===== TEST 3: IP con muchos reportes (200.24.34.55) =====");
-        List<Integer> blackLists3 = hblv.checkHost("200.24.34.55", numberOfThreads);
+        System.out.println("\n===== TEST 3: IP con muchos reportes, deteniendo al llegar al umbral (200.24.34.55) =====");
+        List<Integer> blackLists3 = hblv.checkHost("200.24.34.55", numberOfThreads, true);
         System.out.println("The host was found in the following blacklists: " + blackLists3);
     }
 }
\ No newline at end of file
@@ -4,17 +4,32 @@ import java.util.List;
 
 public class PerformanceTest {
     
+    /**
+     * @param args opcionalmente una ScanStrategy (PLATFORM_POOL, FORK_JOIN,
+     * VIRTUAL_THREADS); sin argumentos se crean hilos nuevos en cada prueba
+     */
     public static void main(String[] args) {
         
-        HostBlackListsValidator hblv = new HostBlackListsValidator();
+        int cores = Runtime.getRuntime().availableProcessors();
+        int[] threadCounts = {1, cores, cores * 2, 50, 100, 200, 500};
+        
+        // Cada consulta a la fachada duerme, así que el pool se dimensiona
+        // para la prueba con más hilos; se cierra aunque una prueba falle
+        try (BlackListScanEngine engine = args.length > 0
+                ? new BlackListScanEngine(ScanStrategy.valueOf(args[0]), 500) : null) {
+            if (engine != null) {
+                System.out.println("Estrategia de ejecución: " + engine.getStrategy());
+            }
+            run(new HostBlackListsValidator(engine), cores, threadCounts);
+        }
+    }
+    
+    private static void run(HostBlackListsValidator hblv, int cores, int[] threadCounts) {
         String ipToTest = "202.24.34.55";
         
-        int cores = Runtime.getRuntime().availableProcessors();
         System.out.println("Número de núcleos disponibles: " + cores);
         System.out.println("=========================================\n");
         
-        int[] threadCounts = {1, cores, cores * 2, 50, 100, 200, 500};
-        
         for (int numThreads : threadCounts) {
             System.out.println("*** Prueba con " + numThreads + " hilos ***");
             
@@ -35,5 +50,15 @@ public class PerformanceTest {
                 e.printStackTrace();
             }
         }
+        
+        System.out.println("*** Prueba con número de hilos adaptativo ***");
+        long startTime = System.currentTimeMillis();
+        List<Integer> blackLists = hblv.checkHost(ipToTest);
+        System.out.println("Tiempo de ejecución: " + (System.currentTimeMillis() - startTime) + " ms");
+        System.out.println("Listas negras encontradas: " + blackLists.size());
+        System.out.println("Límite final: " + hblv.getConcurrencyLimiter());
+        System.out.println("=========================================\n");
+        
+        System.out.println("Métricas: " + ScanMetrics.getInstance().snapshot());
     }
 }
\ No newline at end of file
@@ -0,0 +1,70 @@
+package edu.eci.arsw.blacklistvalidator;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Estado compartido por todos los trabajadores de una búsqueda: las
+ * ocurrencias encontradas hasta ahora y si la búsqueda debe detenerse,
+ * ya sea porque se alcanzó el umbral de alarma o porque se canceló.
+ */
+public class ScanControl {
+    
+    private final AtomicInteger ocurrences;
+    private final int alarmCount;
+    private volatile boolean cancelled = false;
+    
+    /**
+     * @param alarmCount número de ocurrencias a partir del cual se detiene;
+     * Integer.MAX_VALUE para revisar todas las listas
+     */
+    public ScanControl(int alarmCount) {
+        this.ocurrences = new AtomicInteger(0);
+        this.alarmCount = alarmCount;
+    }
+    
+    /**
+     * Control de una búsqueda que revisa todas las listas
+     */
+    public static ScanControl unbounded() {
+        return new ScanControl(Integer.MAX_VALUE);
+    }
+    
+    /**
+     * Los trabajadores lo consultan antes de cada consulta a la fachada
+     */
+    public boolean shouldStop() {
+        return cancelled || ocurrences.get() >= alarmCount;
+    }
+    
+    public void recordOcurrence() {
+        ocurrences.incrementAndGet();
+    }
+    
+    /**
+     * Suma ocurrencias encontradas sin consultar la fachada, p. ej. en el
+     * índice local
+     */
+    public void addOcurrences(int count) {
+        ocurrences.addAndGet(count);
+    }
+    
+    public int getOcurrences() {
+        return ocurrences.get();
+    }
+    
+    public boolean isAlarmReached() {
+        return ocurrences.get() >= alarmCount;
+    }
+    
+    /**
+     * Pide a todos los trabajadores que se detengan; cada uno termina la
+     * consulta en curso y no empieza otra.
+     */
+    public void cancel() {
+        cancelled = true;
+    }
+    
+    public boolean isCancelled() {
+        return cancelled;
+    }
+}
@@ -0,0 +1,291 @@
+package edu.eci.arsw.blacklistvalidator;
+
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * Métricas de las búsquedas del proceso: latencia de cada consulta a
+ * isInBlackListServer, listas revisadas por segundo, consultas y
+ * ocurrencias por hilo trabajador, diferencia entre el trabajador que
+ * termina primero y el último, y veredictos entregados. Solo se cuentan por
+ * separado los primeros MAX_TRACKED_WORKERS hilos. Todo se registra
+ * con LongAdder e histogramas sin bloqueos para no agregar contención a
+ * los trabajadores.
+ *
+ * La instancia única se registra en JMX como
+ * edu.eci.arsw.blacklistvalidator:type=ScanMetrics.
+ */
+public class ScanMetrics implements ScanMetricsMXBean {
+    
+    public static final String OBJECT_NAME = "edu.eci.arsw.blacklistvalidator:type=ScanMetrics";
+    
+    /**
+     * Hilos que se cuentan por separado; los pools cacheados crean hilos con
+     * nombres nuevos durante toda la vida del proceso, así que el trabajo de
+     * los hilos que aparecen después se suma en OTHER_WORKERS
+     */
+    static final int MAX_TRACKED_WORKERS = 256;
+    
+    static final String OTHER_WORKERS = "other";
+    
+    private static final ScanMetrics INSTANCE = new ScanMetrics();
+    
+    private final LatencyHistogram probeLatency = new LatencyHistogram();
+    private final LongAdder probeHits = new LongAdder();
+    private final LatencyHistogram scanLatency = new LatencyHistogram();
+    private final LongAdder checkedLists = new LongAdder();
+    private final LatencyHistogram finishSpread = new LatencyHistogram();
+    private final LongAdder trustworthy = new LongAdder();
+    private final LongAdder notTrustworthy = new LongAdder();
+    private final LongAdder partial = new LongAdder();
+    private final LongAdder rejectedHedges = new LongAdder();
+    private final ConcurrentHashMap<String, WorkerCounters> workers = new ConcurrentHashMap<>();
+    // Entradas de workers sin contar OTHER_WORKERS
+    private final AtomicInteger trackedWorkers = new AtomicInteger(0);
+    
+    private ScanMetrics() {
+    }
+    
+    public static ScanMetrics getInstance() {
+        return INSTANCE;
+    }
+    
+    /**
+     * Una consulta a la fachada
+     */
+    void recordProbe(long elapsedNanos) {
+        probeLatency.record(elapsedNanos);
+    }
+    
+    /**
+     * Consultas y ocurrencias de un trozo revisado por el hilo actual
+     */
+    void recordWork(int checks, int hits) {
+        String name = Thread.currentThread().getName();
+        // Los hilos virtuales no tienen nombre
+        if (name.isEmpty()) {
+            name = "virtual";
+        }
+        WorkerCounters counters = workers.get(name);
+        if (counters == null) {
+            counters = track(name);
+        }
+        counters.checks.add(checks);
+        counters.hits.add(hits);
+        probeHits.add(hits);
+    }
+    
+    /**
+     * Agrega los contadores del hilo si todavía hay cupo; si no, devuelve
+     * los de OTHER_WORKERS
+     */
+    private WorkerCounters track(String name) {
+        if (trackedWorkers.incrementAndGet() > MAX_TRACKED_WORKERS) {
+            trackedWorkers.decrementAndGet();
+            return workers.computeIfAbsent(OTHER_WORKERS, k -> new WorkerCounters());
+        }
+        WorkerCounters created = new WorkerCounters();
+        WorkerCounters counters = workers.putIfAbsent(name, created);
+        if (counters != null) {
+            // Otro hilo con el mismo nombre ya ocupó el cupo
+            trackedWorkers.decrementAndGet();
+            return counters;
+        }
+        return created;
+    }
+    
+    /**
+     * Una búsqueda completa de una IP
+     */
+    void recordScan(long elapsedNanos, long checkedListsCount) {
+        scanLatency.record(elapsedNanos);
+        checkedLists.add(checkedListsCount);
+    }
+    
+    /**
+     * Tiempo entre el primer y el último trabajador en terminar una búsqueda
+     */
+    void recordFinishSpread(long spreadNanos) {
+        finishSpread.record(spreadNanos);
+    }
+    
+    /**
+     * @return búsquedas cuyo tiempo entre trabajadores se registró
+     */
+    long getFinishSpreadCount() {
+        return finishSpread.getCount();
+    }
+    
+    /**
+     * Una copia de HedgedDataSource que no se lanzó porque su pool estaba lleno
+     */
+    void recordRejectedHedge() {
+        rejectedHedges.increment();
+    }
+    
+    void recordVerdict(HostVerdict verdict) {
+        if (verdict.isPartial()) {
+            partial.increment();
+        } else if (verdict.isTrustworthy()) {
+            trustworthy.increment();
+        } else {
+            notTrustworthy.increment();
+        }
+    }
+    
+    /**
+     * @return copia de las métricas actuales; los valores se leen uno por
+     * uno, así que pueden no corresponder a un mismo instante
+     */
+    public ScanMetricsSnapshot snapshot() {
+        return new ScanMetricsSnapshot(getProbeCount(), getProbeHitCount(),
+                getProbeLatencyMeanNanos(), getProbeLatencyP50Nanos(),
+                getProbeLatencyP99Nanos(), getProbeLatencyMaxNanos(),
+                getScanCount(), getCheckedListsCount(), getListsPerSecond(),
+                getScanLatencyP99Nanos(), getFinishSpreadP50Nanos(), getFinishSpreadMaxNanos(),
+                getTrustworthyCount(), getNotTrustworthyCount(), getPartialCount(),
+                getRejectedHedgeCount(), getWorkerChecks(), getWorkerHits());
+    }
+    
+    @Override
+    public long getProbeCount() {
+        return probeLatency.getCount();
+    }
+    
+    @Override
+    public long getProbeHitCount() {
+        return probeHits.sum();
+    }
+    
+    @Override
+    public double getProbeLatencyMeanNanos() {
+        return probeLatency.getMean();
+    }
+    
+    @Override
+    public long getProbeLatencyP50Nanos() {
+        return probeLatency.getPercentile(50);
+    }
+    
+    @Override
+    public long getProbeLatencyP99Nanos() {
+        return probeLatency.getPercentile(99);
+    }
+    
+    @Override
+    public long getProbeLatencyMaxNanos() {
+        return probeLatency.getMax();
+    }
+    
+    @Override
+    public long getScanCount() {
+        return scanLatency.getCount();
+    }
+    
+    @Override
+    public long getCheckedListsCount() {
+        return checkedLists.sum();
+    }
+    
+    /**
+     * @return listas revisadas por segundo de búsqueda
+     */
+    @Override
+    public double getListsPerSecond() {
+        long nanos = scanLatency.getSum();
+        return nanos == 0 ? 0 : checkedLists.sum() * 1e9 / nanos;
+    }
+    
+    @Override
+    public long getScanLatencyP99Nanos() {
+        return scanLatency.getPercentile(99);
+    }
+    
+    @Override
+    public long getFinishSpreadP50Nanos() {
+        return finishSpread.getPercentile(50);
+    }
+    
+    @Override
+    public long getFinishSpreadMaxNanos() {
+        return finishSpread.getMax();
+    }
+    
+    @Override
+    public long getTrustworthyCount() {
+        return trustworthy.sum();
+    }
+    
+    @Override
+    public long getNotTrustworthyCount() {
+        return notTrustworthy.sum();
+    }
+    
+    @Override
+    public long getPartialCount() {
+        return partial.sum();
+    }
+    
+    @Override
+    public long getRejectedHedgeCount() {
+        return rejectedHedges.sum();
+    }
+    
+    @Override
+    public Map<String, Long> getWorkerChecks() {
+        Map<String, Long> checks = new TreeMap<>();
+        for (Map.Entry<String, WorkerCounters> worker : workers.entrySet()) {
+            checks.put(worker.getKey(), worker.getValue().checks.sum());
+        }
+        return checks;
+    }
+    
+    @Override
+    public Map<String, Long> getWorkerHits() {
+        Map<String, Long> hits = new TreeMap<>();
+        for (Map.Entry<String, WorkerCounters> worker : workers.entrySet()) {
+            hits.put(worker.getKey(), worker.getValue().hits.sum());
+        }
+        return hits;
+    }
+    
+    @Override
+    public void reset() {
+        probeLatency.reset();
+        probeHits.reset();
+        scanLatency.reset();
+        checkedLists.reset();
+        finishSpread.reset();
+        trustworthy.reset();
+        notTrustworthy.reset();
+        partial.reset();
+        rejectedHedges.reset();
+        workers.clear();
+        trackedWorkers.set(0);
+    }
+    
+    private static class WorkerCounters {
+        
+        private final LongAdder checks = new LongAdder();
+        private final LongAdder hits = new LongAdder();
+    }
+    
+    private static final Logger LOG = Logger.getLogger(ScanMetrics.class.getName());
+    
+    // Después de LOG, que se usa si el registro falla
+    static {
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(INSTANCE, new ObjectName(OBJECT_NAME));
+        } catch (JMException ex) {
+            LOG.log(Level.WARNING, "Could not register the scan metrics MBean", ex);
+        }
+    }
+}
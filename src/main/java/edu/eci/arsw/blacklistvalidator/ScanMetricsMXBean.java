@@ -0,0 +1,47 @@
+package edu.eci.arsw.blacklistvalidator;
+
+import java.util.Map;
+
+/**
+ * Vista JMX de ScanMetrics. Las latencias están en nanosegundos.
+ */
+public interface ScanMetricsMXBean {
+    
+    long getProbeCount();
+    
+    long getProbeHitCount();
+    
+    double getProbeLatencyMeanNanos();
+    
+    long getProbeLatencyP50Nanos();
+    
+    long getProbeLatencyP99Nanos();
+    
+    long getProbeLatencyMaxNanos();
+    
+    long getScanCount();
+    
+    long getCheckedListsCount();
+    
+    double getListsPerSecond();
+    
+    long getScanLatencyP99Nanos();
+    
+    long getFinishSpreadP50Nanos();
+    
+    long getFinishSpreadMaxNanos();
+    
+    long getTrustworthyCount();
+    
+    long getNotTrustworthyCount();
+    
+    long getPartialCount();
+    
+    long getRejectedHedgeCount();
+    
+    Map<String, Long> getWorkerChecks();
+    
+    Map<String, Long> getWorkerHits();
+    
+    void reset();
+}
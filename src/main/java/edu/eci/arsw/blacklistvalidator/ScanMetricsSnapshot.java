@@ -0,0 +1,152 @@
+package edu.eci.arsw.blacklistvalidator;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * Copia inmutable de ScanMetrics. Las latencias están en nanosegundos.
+ */
+public class ScanMetricsSnapshot {
+    
+    private final long probeCount;
+    private final long probeHitCount;
+    private final double probeLatencyMeanNanos;
+    private final long probeLatencyP50Nanos;
+    private final long probeLatencyP99Nanos;
+    private final long probeLatencyMaxNanos;
+    private final long scanCount;
+    private final long checkedListsCount;
+    private final double listsPerSecond;
+    private final long scanLatencyP99Nanos;
+    private final long finishSpreadP50Nanos;
+    private final long finishSpreadMaxNanos;
+    private final long trustworthyCount;
+    private final long notTrustworthyCount;
+    private final long partialCount;
+    private final long rejectedHedgeCount;
+    private final Map<String, Long> workerChecks;
+    private final Map<String, Long> workerHits;
+    
+    ScanMetricsSnapshot(long probeCount, long probeHitCount, double probeLatencyMeanNanos,
+                        long probeLatencyP50Nanos, long probeLatencyP99Nanos, long probeLatencyMaxNanos,
+                        long scanCount, long checkedListsCount, double listsPerSecond,
+                        long scanLatencyP99Nanos, long finishSpreadP50Nanos, long finishSpreadMaxNanos,
+                        long trustworthyCount, long notTrustworthyCount, long partialCount,
+                        long rejectedHedgeCount,
+                        Map<String, Long> workerChecks, Map<String, Long> workerHits) {
+        this.probeCount = probeCount;
+        this.probeHitCount = probeHitCount;
+        this.probeLatencyMeanNanos = probeLatencyMeanNanos;
+        this.probeLatencyP50Nanos = probeLatencyP50Nanos;
+        this.probeLatencyP99Nanos = probeLatencyP99Nanos;
+        this.probeLatencyMaxNanos = probeLatencyMaxNanos;
+        this.scanCount = scanCount;
+        this.checkedListsCount = checkedListsCount;
+        this.listsPerSecond = listsPerSecond;
+        this.scanLatencyP99Nanos = scanLatencyP99Nanos;
+        this.finishSpreadP50Nanos = finishSpreadP50Nanos;
+        this.finishSpreadMaxNanos = finishSpreadMaxNanos;
+        this.trustworthyCount = trustworthyCount;
+        this.notTrustworthyCount = notTrustworthyCount;
+        this.partialCount = partialCount;
+        this.rejectedHedgeCount = rejectedHedgeCount;
+        this.workerChecks = Collections.unmodifiableMap(workerChecks);
+        this.workerHits = Collections.unmodifiableMap(workerHits);
+    }
+    
+    public long getProbeCount() {
+        return probeCount;
+    }
+    
+    public long getProbeHitCount() {
+        return probeHitCount;
+    }
+    
+    public double getProbeLatencyMeanNanos() {
+        return probeLatencyMeanNanos;
+    }
+    
+    public long getProbeLatencyP50Nanos() {
+        return probeLatencyP50Nanos;
+    }
+    
+    public long getProbeLatencyP99Nanos() {
+        return probeLatencyP99Nanos;
+    }
+    
+    public long getProbeLatencyMaxNanos() {
+        return probeLatencyMaxNanos;
+    }
+    
+    public long getScanCount() {
+        return scanCount;
+    }
+    
+    public long getCheckedListsCount() {
+        return checkedListsCount;
+    }
+    
+    public double getListsPerSecond() {
+        return listsPerSecond;
+    }
+    
+    public long getScanLatencyP99Nanos() {
+        return scanLatencyP99Nanos;
+    }
+    
+    public long getFinishSpreadP50Nanos() {
+        return finishSpreadP50Nanos;
+    }
+    
+    public long getFinishSpreadMaxNanos() {
+        return finishSpreadMaxNanos;
+    }
+    
+    public long getTrustworthyCount() {
+        return trustworthyCount;
+    }
+    
+    public long getNotTrustworthyCount() {
+        return notTrustworthyCount;
+    }
+    
+    public long getPartialCount() {
+        return partialCount;
+    }
+    
+    /**
+     * @return copias de HedgedDataSource que no se lanzaron por tener el
+     * pool lleno
+     */
+    public long getRejectedHedgeCount() {
+        return rejectedHedgeCount;
+    }
+    
+    /**
+     * @return listas consultadas por cada hilo trabajador, por nombre de hilo
+     * (los hilos por encima del límite de ScanMetrics, juntos en "other")
+     */
+    public Map<String, Long> getWorkerChecks() {
+        return workerChecks;
+    }
+    
+    /**
+     * @return ocurrencias encontradas por cada hilo trabajador, por nombre de hilo
+     * (los hilos por encima del límite de ScanMetrics, juntos en "other")
+     */
+    public Map<String, Long> getWorkerHits() {
+        return workerHits;
+    }
+    
+    @Override
+    public String toString() {
+        return String.format("probes=%d hits=%d latency mean=%.0fns p50=%dns p99=%dns max=%dns; "
+                + "scans=%d lists=%d (%.0f lists/s, p99 %dns); finish spread p50=%dns max=%dns; "
+                + "verdicts trustworthy=%d not trustworthy=%d partial=%d; rejected hedges=%d; workers=%d",
+                probeCount, probeHitCount, probeLatencyMeanNanos, probeLatencyP50Nanos,
+                probeLatencyP99Nanos, probeLatencyMaxNanos, scanCount, checkedListsCount,
+                listsPerSecond, scanLatencyP99Nanos, finishSpreadP50Nanos, finishSpreadMaxNanos,
+                trustworthyCount, notTrustworthyCount, partialCount, rejectedHedgeCount,
+                workerChecks.size());
+    }
+}
@@ -0,0 +1,72 @@
+package edu.eci.arsw.blacklistvalidator;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Opciones de checkHostAsync: número de hilos, si se detiene al llegar al
+ * umbral de alarma y el plazo máximo de la búsqueda.
+ */
+public class ScanOptions {
+    
+    private final int threads;
+    private final boolean stopOnAlarm;
+    private final long timeoutNanos;
+    
+    private ScanOptions(int threads, boolean stopOnAlarm, long timeoutNanos) {
+        this.threads = threads;
+        this.stopOnAlarm = stopOnAlarm;
+        this.timeoutNanos = timeoutNanos;
+    }
+    
+    /**
+     * Búsqueda sin plazo con el número de hilos dado
+     */
+    public static ScanOptions threads(int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("threads must be positive: " + threads);
+        }
+        return new ScanOptions(threads, false, 0);
+    }
+    
+    /**
+     * Búsqueda sin plazo cuyo número de hilos lo decide el
+     * ConcurrencyLimiter del validador
+     */
+    public static ScanOptions adaptive() {
+        return new ScanOptions(HostBlackListsValidator.ADAPTIVE_THREADS, false, 0);
+    }
+    
+    public ScanOptions stopOnAlarm(boolean stopOnAlarm) {
+        return new ScanOptions(threads, stopOnAlarm, timeoutNanos);
+    }
+    
+    /**
+     * Al vencerse el plazo se detienen los trabajadores y se entrega un
+     * resultado parcial
+     */
+    public ScanOptions deadline(long timeout, TimeUnit unit) {
+        if (timeout <= 0) {
+            throw new IllegalArgumentException("timeout must be positive: " + timeout);
+        }
+        return new ScanOptions(threads, stopOnAlarm, unit.toNanos(timeout));
+    }
+    
+    /**
+     * @return número de hilos, o HostBlackListsValidator.ADAPTIVE_THREADS
+     */
+    public int getThreads() {
+        return threads;
+    }
+    
+    public boolean isStopOnAlarm() {
+        return stopOnAlarm;
+    }
+    
+    public boolean hasDeadline() {
+        return timeoutNanos > 0;
+    }
+    
+    public long getTimeoutNanos() {
+        return timeoutNanos;
+    }
+}
@@ -0,0 +1,30 @@
+package edu.eci.arsw.blacklistvalidator;
+
+/**
+ * Forma en que BlackListScanEngine ejecuta los segmentos de una búsqueda
+ */
+public enum ScanStrategy {
+    
+    /**
+     * Pool acotado de hilos de plataforma reutilizados entre llamadas
+     */
+    PLATFORM_POOL,
+    
+    /**
+     * ForkJoinPool que divide recursivamente el rango de listas negras; el
+     * tamaño de las hojas sale del scheduler y a lo sumo N de ellas (y no
+     * más que los hilos del pool) se revisan a la vez. La división es
+     * estática: casi todas las hojas se cortan antes de que el scheduler
+     * mida alguna, así que su tamaño es en la práctica el del primer trozo
+     * y una hoja lenta no se vuelve a repartir
+     */
+    FORK_JOIN,
+    
+    /**
+     * Un hilo virtual por segmento (Java 21+). En JVMs anteriores (el
+     * proyecto compila para Java 8) se usa en su lugar un pool de hilos de
+     * plataforma que crece bajo demanda; getExecutorKind del motor dice
+     * cuál de los dos se eligió
+     */
+    VIRTUAL_THREADS
+}
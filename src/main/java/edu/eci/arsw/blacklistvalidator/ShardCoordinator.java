@@ -0,0 +1,573 @@
+package edu.eci.arsw.blacklistvalidator;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import edu.eci.arsw.spamkeywordsdatasource.HostBlacklistsDataSourceFacade;
+
+/**
+ * Búsqueda repartida entre varios procesos: el coordinador divide las
+ * listas negras en shards y los envía por sockets TCP locales a procesos
+ * ShardWorker, cada uno con su propia JVM (y su propio GC y pool de hilos).
+ * Cada trabajador tiene a lo sumo un shard a la vez y pide el siguiente al
+ * terminar, así los más rápidos revisan más shards. Las ocurrencias llegan
+ * en cuanto se encuentran: al llegar a BLACK_LIST_ALARM_COUNT se cancelan
+ * los demás shards. Si un trabajador muere, su shard se descarta y se
+ * vuelve a asignar completo a otro. Los trabajadores se comunican por TCP
+ * en la interfaz de loopback (ver ShardProtocol).
+ *
+ * Los mensajes a cada trabajador los escribe un hilo propio de la conexión,
+ * así una conexión que no acepta datos no bloquea al coordinador ni a las
+ * demás conexiones.
+ */
+public class ShardCoordinator implements AutoCloseable {
+    
+    // Shards por trabajador, para repartir bien aunque haya uno lento
+    private static final int SHARDS_PER_WORKER = 4;
+    private static final int CONNECT_TIMEOUT_MILLIS = 30000;
+    private static final long SHUTDOWN_TIMEOUT_MILLIS = 5000;
+    
+    private final ServerSocket server;
+    private final List<Process> processes;
+    private final List<WorkerLink> links = new ArrayList<>();
+    private final BlacklistDataSource dataSource;
+    // Una búsqueda a la vez; el estado de la búsqueda está protegido por this
+    private final ReentrantLock scanLock = new ReentrantLock();
+    
+    private ShardScan scan;
+    private int nextTaskId = 0;
+    private int requeuedShards = 0;
+    private volatile boolean closed = false;
+    
+    private ShardCoordinator(ServerSocket server, List<Process> processes, BlacklistDataSource dataSource) {
+        this.server = server;
+        this.processes = processes;
+        this.dataSource = dataSource;
+    }
+    
+    /**
+     * Arranca workers procesos ShardWorker con el mismo classpath que éste y
+     * espera a que se conecten.
+     * @param threadsPerWorker hilos de búsqueda de cada trabajador
+     * @throws IOException si algún trabajador no se conecta a tiempo
+     */
+    public static ShardCoordinator launch(int workers, int threadsPerWorker) throws IOException {
+        if (workers < 1 || threadsPerWorker < 1) {
+            throw new IllegalArgumentException("Invalid workers/threads: " + workers + "/" + threadsPerWorker);
+        }
+        ServerSocket server = new ServerSocket(0, workers, InetAddress.getLoopbackAddress());
+        List<Process> processes = new ArrayList<>(workers);
+        ShardCoordinator coordinator = new ShardCoordinator(server, processes,
+                new FacadeDataSource(HostBlacklistsDataSourceFacade.getInstance()));
+        try {
+            String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+            for (int i = 0; i < workers; i++) {
+                processes.add(new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"),
+                        ShardWorker.class.getName(), server.getInetAddress().getHostAddress(),
+                        String.valueOf(server.getLocalPort()), String.valueOf(i),
+                        String.valueOf(threadsPerWorker)).inheritIO().start());
+            }
+            coordinator.accept(workers);
+        } catch (IOException | RuntimeException ex) {
+            coordinator.close();
+            throw ex;
+        }
+        return coordinator;
+    }
+    
+    /**
+     * Si falla, cierra las conexiones ya aceptadas para que close() no
+     * espere a esos trabajadores
+     */
+    private void accept(int workers) throws IOException {
+        WorkerLink[] byIndex = new WorkerLink[workers];
+        server.setSoTimeout(CONNECT_TIMEOUT_MILLIS);
+        try {
+            for (int connected = 0; connected < workers; connected++) {
+                Socket socket;
+                try {
+                    socket = server.accept();
+                } catch (SocketTimeoutException ex) {
+                    throw new IOException("Only " + connected + " of " + workers + " shard workers connected", ex);
+                }
+                try {
+                    acceptLink(socket, byIndex);
+                } catch (IOException | RuntimeException ex) {
+                    try {
+                        socket.close();
+                    } catch (IOException closing) {
+                        ex.addSuppressed(closing);
+                    }
+                    throw ex;
+                }
+            }
+        } catch (IOException | RuntimeException ex) {
+            for (WorkerLink link : byIndex) {
+                if (link != null) {
+                    link.close();
+                }
+            }
+            throw ex;
+        }
+        synchronized (this) {
+            Collections.addAll(links, byIndex);
+        }
+        for (WorkerLink link : byIndex) {
+            link.start();
+        }
+    }
+    
+    /**
+     * Lee el HELLO de un trabajador recién conectado y guarda su conexión en
+     * byIndex. El socket aceptado no hereda el timeout del ServerSocket: sin
+     * el suyo, un trabajador que no manda HELLO bloquearía aquí para siempre.
+     */
+    private void acceptLink(Socket socket, WorkerLink[] byIndex) throws IOException {
+        socket.setTcpNoDelay(true);
+        socket.setSoTimeout(CONNECT_TIMEOUT_MILLIS);
+        WorkerLink link = new WorkerLink(socket);
+        int index;
+        try {
+            index = link.readHello();
+        } catch (SocketTimeoutException ex) {
+            throw new IOException("A shard worker connected but sent no HELLO", ex);
+        }
+        socket.setSoTimeout(0);
+        link.index = index;
+        if (index < 0 || index >= byIndex.length || byIndex[index] != null) {
+            throw new IOException("Unexpected shard worker " + index);
+        }
+        byIndex[index] = link;
+    }
+    
+    /**
+     * Busca la IP en todas las listas negras repartiéndolas entre los
+     * trabajadores y la reporta como confiable o no confiable.
+     * @param stopOnAlarm si se detienen todos los shards al encontrar
+     * BLACK_LIST_ALARM_COUNT ocurrencias
+     * @throws IllegalStateException si no queda ningún trabajador vivo o el
+     * hilo que llama es interrumpido
+     */
+    public HostVerdict checkHost(String ipaddress, boolean stopOnAlarm) {
+        int packed = IpAddresses.pack(ipaddress);
+        // Los trabajadores buscan la forma canónica: se reporta esa misma
+        String host = IpAddresses.unpack(packed);
+        int total = dataSource.getRegisteredServersCount();
+        long begin = System.nanoTime();
+        scanLock.lock();
+        try {
+            ShardScan current;
+            boolean partial;
+            synchronized (this) {
+                current = new ShardScan(packed,
+                        stopOnAlarm ? HostBlackListsValidator.BLACK_LIST_ALARM_COUNT : Integer.MAX_VALUE);
+                scan = current;
+                int shards = Math.max(1, liveLinks() * SHARDS_PER_WORKER);
+                for (int i = 0; i < shards; i++) {
+                    int from = (int) ((long) total * i / shards);
+                    int to = (int) ((long) total * (i + 1) / shards);
+                    if (from < to) {
+                        current.pending.add(new Shard(nextTaskId++, from, to));
+                    }
+                }
+                dispatch();
+                try {
+                    while (!current.isFinished()) {
+                        if (liveLinks() == 0) {
+                            throw new IllegalStateException("No shard workers left to scan " + host);
+                        }
+                        wait();
+                    }
+                } catch (InterruptedException ex) {
+                    cancelRunning();
+                    Thread.currentThread().interrupt();
+                    throw new IllegalStateException("Interrupted while scanning " + host, ex);
+                }
+                // Si muere un trabajador después de la alarma sus ocurrencias
+                // se descartan, y los shards ya cancelados no se pueden
+                // completar: sin la alarma la búsqueda queda incompleta
+                partial = current.isStopped() && !current.isAlarmReached();
+            }
+            
+            List<Integer> blackListOcurrences = new LinkedList<>(current.ocurrences);
+            Collections.sort(blackListOcurrences);
+            HostVerdict verdict = new HostVerdict(host,
+                    blackListOcurrences.size() < HostBlackListsValidator.BLACK_LIST_ALARM_COUNT,
+                    blackListOcurrences, current.checkedListsCount, partial);
+            ScanMetrics.getInstance().recordScan(System.nanoTime() - begin, verdict.getCheckedListsCount());
+            ScanMetrics.getInstance().recordVerdict(verdict);
+            if (partial) {
+                return verdict;
+            }
+            if (verdict.isTrustworthy()) {
+                dataSource.reportAsTrustworthy(host);
+            } else {
+                dataSource.reportAsNotTrustworthy(host);
+            }
+            LOG.log(Level.INFO, "Checked Black Lists:{0} of {1}", new Object[]{verdict.getCheckedListsCount(), total});
+            return verdict;
+        } finally {
+            synchronized (this) {
+                scan = null;
+            }
+            scanLock.unlock();
+        }
+    }
+    
+    /**
+     * @return procesos trabajadores, por índice
+     */
+    List<Process> getWorkerProcesses() {
+        return Collections.unmodifiableList(processes);
+    }
+    
+    /**
+     * @return true si el trabajador tiene un shard asignado ahora
+     */
+    synchronized boolean hasShard(int workerIndex) {
+        return links.get(workerIndex).shard != null;
+    }
+    
+    /**
+     * @return shards de trabajadores muertos que volvieron a la cola
+     */
+    synchronized int getRequeuedShardCount() {
+        return requeuedShards;
+    }
+    
+    /**
+     * Pide a los trabajadores que terminen y los destruye si no lo hacen a
+     * tiempo
+     */
+    @Override
+    public void close() {
+        closed = true;
+        List<WorkerLink> all;
+        synchronized (this) {
+            all = new ArrayList<>(links);
+        }
+        for (WorkerLink link : all) {
+            link.shutdown();
+        }
+        for (Process process : processes) {
+            try {
+                if (!process.waitFor(SHUTDOWN_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)) {
+                    process.destroyForcibly();
+                }
+            } catch (InterruptedException ex) {
+                process.destroyForcibly();
+                Thread.currentThread().interrupt();
+            }
+        }
+        try {
+            server.close();
+        } catch (IOException ex) {
+            LOG.log(Level.WARNING, "Could not close the coordinator socket", ex);
+        }
+    }
+    
+    // Los métodos siguientes se llaman con el monitor de this tomado
+    
+    private int liveLinks() {
+        int live = 0;
+        for (WorkerLink link : links) {
+            if (link.alive) {
+                live++;
+            }
+        }
+        return live;
+    }
+    
+    /**
+     * Entrega shards pendientes a los trabajadores vivos que no tienen uno
+     */
+    private void dispatch() {
+        if (scan == null || scan.isAlarmReached()) {
+            return;
+        }
+        for (WorkerLink link : links) {
+            if (scan.pending.isEmpty()) {
+                return;
+            }
+            if (link.alive && link.shard == null) {
+                Shard shard = scan.pending.poll();
+                link.shard = shard;
+                scan.running.put(shard.taskId, shard);
+                link.send(ShardProtocol.SCAN, shard.taskId, scan.ipaddress, shard.from, shard.to);
+            }
+        }
+    }
+    
+    private void cancelRunning() {
+        for (WorkerLink link : links) {
+            if (link.shard != null) {
+                link.send(ShardProtocol.CANCEL, link.shard.taskId);
+            }
+        }
+    }
+    
+    private synchronized void onHit(int taskId, int serverNumber) {
+        Shard shard = scan == null ? null : scan.running.get(taskId);
+        if (shard == null) {
+            return;
+        }
+        shard.ocurrences.add(serverNumber);
+        scan.ocurrenceCount++;
+        if (scan.ocurrenceCount == scan.alarmCount) {
+            scan.stopped = true;
+            cancelRunning();
+        }
+    }
+    
+    private synchronized void onDone(WorkerLink link, int taskId, int checkedLists) {
+        if (link.shard != null && link.shard.taskId == taskId) {
+            link.shard = null;
+        }
+        Shard shard = scan == null ? null : scan.running.remove(taskId);
+        if (shard != null) {
+            scan.ocurrences.addAll(shard.ocurrences);
+            scan.checkedListsCount += checkedLists;
+        }
+        dispatch();
+        notifyAll();
+    }
+    
+    /**
+     * Las ocurrencias del shard de un trabajador muerto se descartan y el
+     * shard vuelve completo a la cola, con otro taskId para ignorar mensajes
+     * que todavía estén en camino
+     */
+    private synchronized void onDeath(WorkerLink link) {
+        if (!link.alive) {
+            return;
+        }
+        link.alive = false;
+        Shard lost = link.shard;
+        link.shard = null;
+        if (lost != null && scan != null && scan.running.remove(lost.taskId) != null) {
+            scan.ocurrenceCount -= lost.ocurrences.size();
+            scan.pending.addFirst(new Shard(nextTaskId++, lost.from, lost.to));
+            requeuedShards++;
+        }
+        if (!closed) {
+            LOG.log(Level.WARNING, "Shard worker {0} died", link.index);
+        }
+        dispatch();
+        notifyAll();
+    }
+    
+    /**
+     * Rango [from, to) de listas negras enviado a un trabajador
+     */
+    private static class Shard {
+        
+        final int taskId;
+        final int from;
+        final int to;
+        final List<Integer> ocurrences = new ArrayList<>();
+        
+        Shard(int taskId, int from, int to) {
+            this.taskId = taskId;
+            this.from = from;
+            this.to = to;
+        }
+    }
+    
+    /**
+     * Estado de la búsqueda en curso
+     */
+    private static class ShardScan {
+        
+        final int ipaddress;
+        final int alarmCount;
+        final ArrayDeque<Shard> pending = new ArrayDeque<>();
+        final Map<Integer, Shard> running = new HashMap<>();
+        final List<Integer> ocurrences = new ArrayList<>();
+        int ocurrenceCount = 0;
+        int checkedListsCount = 0;
+        // Se cancelaron shards al llegar a la alarma
+        boolean stopped = false;
+        
+        ShardScan(int ipaddress, int alarmCount) {
+            this.ipaddress = ipaddress;
+            this.alarmCount = alarmCount;
+        }
+        
+        boolean isAlarmReached() {
+            return ocurrenceCount >= alarmCount;
+        }
+        
+        boolean isStopped() {
+            return stopped;
+        }
+        
+        boolean isFinished() {
+            return running.isEmpty() && (isAlarmReached() || pending.isEmpty());
+        }
+    }
+    
+    /**
+     * Conexión con un trabajador; su hilo lector entrega los mensajes al
+     * coordinador y su hilo escritor envía, en orden, los que se encolan con
+     * send
+     */
+    private class WorkerLink implements Runnable {
+        
+        private final Socket socket;
+        private final DataInputStream in;
+        private final DataOutputStream out;
+        // Tipo del mensaje seguido de sus enteros
+        private final LinkedBlockingQueue<int[]> outbox = new LinkedBlockingQueue<>();
+        // Se asigna antes de arrancar el lector, que lo interrumpe al morir
+        private volatile Thread writer;
+        int index;
+        // Protegidos por el monitor del coordinador
+        boolean alive = true;
+        Shard shard;
+        
+        WorkerLink(Socket socket) throws IOException {
+            this.socket = socket;
+            this.in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            this.out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+        }
+        
+        int readHello() throws IOException {
+            byte type = in.readByte();
+            if (type != ShardProtocol.HELLO) {
+                throw new IOException("Expected HELLO but got " + type);
+            }
+            return in.readInt();
+        }
+        
+        void start() {
+            Thread output = new Thread(this::write, "shard-writer-" + index);
+            output.setDaemon(true);
+            writer = output;
+            output.start();
+            Thread reader = new Thread(this, "shard-link-" + index);
+            reader.setDaemon(true);
+            reader.start();
+        }
+        
+        @Override
+        public void run() {
+            try {
+                while (true) {
+                    byte type = in.readByte();
+                    if (type == ShardProtocol.HIT) {
+                        onHit(in.readInt(), in.readInt());
+                    } else if (type == ShardProtocol.DONE) {
+                        onDone(this, in.readInt(), in.readInt());
+                    } else {
+                        throw new IOException("Unknown message type " + type);
+                    }
+                }
+            } catch (IOException ex) {
+                if (!closed) {
+                    LOG.log(Level.FINE, "Lost shard worker connection", ex);
+                }
+            } finally {
+                close();
+                Thread output = writer;
+                if (output != null) {
+                    output.interrupt();
+                }
+                onDeath(this);
+            }
+        }
+        
+        /**
+         * Encola el mensaje sin esperar a que se escriba; se puede llamar con
+         * el monitor del coordinador tomado
+         */
+        void send(byte type, int... values) {
+            int[] message = new int[values.length + 1];
+            message[0] = type;
+            System.arraycopy(values, 0, message, 1, values.length);
+            outbox.add(message);
+        }
+        
+        /**
+         * Si no se puede escribir se cierra la conexión; el hilo lector se
+         * encarga de dar al trabajador por muerto
+         */
+        private void write() {
+            try {
+                int[] message;
+                do {
+                    message = outbox.take();
+                    out.writeByte(message[0]);
+                    for (int i = 1; i < message.length; i++) {
+                        out.writeInt(message[i]);
+                    }
+                    if (outbox.isEmpty()) {
+                        out.flush();
+                    }
+                } while (message[0] != ShardProtocol.SHUTDOWN);
+                out.flush();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            } catch (IOException ex) {
+                close();
+            }
+        }
+        
+        /**
+         * Envía SHUTDOWN, espera un poco a que se escriba y cierra la conexión
+         */
+        void shutdown() {
+            send(ShardProtocol.SHUTDOWN);
+            Thread output = writer;
+            if (output != null) {
+                try {
+                    output.join(SHUTDOWN_TIMEOUT_MILLIS);
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            close();
+        }
+        
+        void close() {
+            try {
+                socket.close();
+            } catch (IOException ex) {
+                LOG.log(Level.WARNING, "Could not close a shard worker connection", ex);
+            }
+        }
+    }
+    
+    public static void main(String[] args) throws IOException {
+        if (args.length < 3) {
+            System.err.println("Usage: ShardCoordinator <workers> <threadsPerWorker> <ip>...");
+            System.exit(1);
+        }
+        try (ShardCoordinator coordinator = launch(Integer.parseInt(args[0]), Integer.parseInt(args[1]))) {
+            for (int i = 2; i < args.length; i++) {
+                System.out.println(coordinator.checkHost(args[i], true));
+            }
+        }
+    }
+    
+    private static final Logger LOG = Logger.getLogger(ShardCoordinator.class.getName());
+}
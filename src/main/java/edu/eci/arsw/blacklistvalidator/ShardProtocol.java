@@ -0,0 +1,29 @@
+package edu.eci.arsw.blacklistvalidator;
+
+/**
+ * Mensajes entre ShardCoordinator y los procesos ShardWorker. Cada mensaje
+ * es un byte de tipo seguido de enteros big-endian (DataOutputStream):
+ * <pre>
+ * trabajador -> coordinador
+ *   HELLO    workerIndex             al conectarse
+ *   HIT      taskId, serverNumber    una ocurrencia, en cuanto se encuentra
+ *   DONE     taskId, checkedLists    fin del shard (completo o cancelado)
+ * coordinador -> trabajador
+ *   SCAN     taskId, ip, from, to    revisar la IP empaquetada en [from, to)
+ *   CANCEL   taskId                  dejar de revisar el shard
+ *   SHUTDOWN                         terminar el proceso
+ * </pre>
+ */
+final class ShardProtocol {
+    
+    static final byte HELLO = 0;
+    static final byte HIT = 1;
+    static final byte DONE = 2;
+    
+    static final byte SCAN = 1;
+    static final byte CANCEL = 2;
+    static final byte SHUTDOWN = 3;
+    
+    private ShardProtocol() {
+    }
+}
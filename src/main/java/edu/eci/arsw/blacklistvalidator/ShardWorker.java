@@ -0,0 +1,182 @@
+package edu.eci.arsw.blacklistvalidator;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.Socket;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import edu.eci.arsw.spamkeywordsdatasource.HostBlacklistsDataSourceFacade;
+
+/**
+ * Proceso trabajador del modo por shards: se conecta al ShardCoordinator y
+ * revisa, con su propio BlackListScanEngine, los rangos de listas negras que
+ * éste le asigna. Las ocurrencias se envían en cuanto se encuentran para que
+ * el coordinador pueda detener a los demás trabajadores a tiempo.
+ *
+ * Uso: ShardWorker host puerto índice hilos
+ */
+public class ShardWorker {
+    
+    private final Socket socket;
+    private final DataInputStream in;
+    private final DataOutputStream out;
+    private final BlacklistDataSource dataSource;
+    private final BlackListScanEngine engine;
+    private final int threads;
+    // Los shards se revisan de a uno, en el orden en que llegan
+    private final ExecutorService scans = Executors.newSingleThreadExecutor();
+    private final ConcurrentHashMap<Integer, ScanControl> controls = new ConcurrentHashMap<>();
+    private volatile long probeNanos = 0;
+    
+    ShardWorker(Socket socket, BlacklistDataSource dataSource, int threads) throws IOException {
+        this.socket = socket;
+        this.in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+        this.out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+        this.dataSource = dataSource;
+        this.engine = new BlackListScanEngine(ScanStrategy.PLATFORM_POOL, threads);
+        this.threads = threads;
+    }
+    
+    /**
+     * Atiende al coordinador hasta que pide terminar o cierra la conexión
+     */
+    void serve(int workerIndex) throws IOException {
+        send(ShardProtocol.HELLO, workerIndex);
+        try {
+            while (true) {
+                byte type = in.readByte();
+                if (type == ShardProtocol.SCAN) {
+                    final int taskId = in.readInt();
+                    final int ipaddress = in.readInt();
+                    final int from = in.readInt();
+                    final int to = in.readInt();
+                    // Se registra ya, para que un CANCEL que llegue antes de
+                    // empezar también lo detenga
+                    final ScanControl control = ScanControl.unbounded();
+                    controls.put(taskId, control);
+                    scans.execute(() -> scan(taskId, IpAddresses.unpack(ipaddress), from, to, control));
+                } else if (type == ShardProtocol.CANCEL) {
+                    ScanControl control = controls.get(in.readInt());
+                    if (control != null) {
+                        control.cancel();
+                    }
+                } else if (type == ShardProtocol.SHUTDOWN) {
+                    break;
+                } else {
+                    throw new IOException("Unknown message type " + type);
+                }
+            }
+        } catch (EOFException ex) {
+            LOG.log(Level.INFO, "Coordinator closed the connection");
+        } finally {
+            for (ScanControl control : controls.values()) {
+                control.cancel();
+            }
+            scans.shutdown();
+            engine.close();
+        }
+    }
+    
+    private void scan(int taskId, String ipaddress, int from, int to, ScanControl control) {
+        try {
+            ChunkScheduler scheduler = new ChunkScheduler(from, to, threads, probeNanos);
+            List<BlackListSegment> segments = engine.scan(ipaddress, threads,
+                    new HitReporter(dataSource, taskId), scheduler, control);
+            probeNanos = scheduler.getProbeNanos();
+            int checked = 0;
+            for (BlackListSegment segment : segments) {
+                checked += segment.getCheckedListsCount();
+            }
+            send(ShardProtocol.DONE, taskId, checked);
+        } catch (IOException | RuntimeException ex) {
+            // Sin DONE el coordinador esperaría para siempre: se cierra la
+            // conexión para que reasigne el shard a otro trabajador
+            LOG.log(Level.SEVERE, "Scan of shard " + taskId + " failed", ex);
+            try {
+                socket.close();
+            } catch (IOException closing) {
+                LOG.log(Level.WARNING, "Could not close the connection", closing);
+            }
+        } finally {
+            controls.remove(taskId);
+        }
+    }
+    
+    private void send(byte type, int... values) throws IOException {
+        synchronized (out) {
+            out.writeByte(type);
+            for (int value : values) {
+                out.writeInt(value);
+            }
+            out.flush();
+        }
+    }
+    
+    /**
+     * Envía al coordinador cada ocurrencia del shard en cuanto la encuentra
+     */
+    private class HitReporter implements BlacklistDataSource {
+        
+        private final BlacklistDataSource delegate;
+        private final int taskId;
+        
+        HitReporter(BlacklistDataSource delegate, int taskId) {
+            this.delegate = delegate;
+            this.taskId = taskId;
+        }
+        
+        @Override
+        public int getRegisteredServersCount() {
+            return delegate.getRegisteredServersCount();
+        }
+        
+        @Override
+        public boolean isInBlackListServer(int serverNumber, String ipaddress) {
+            boolean found = delegate.isInBlackListServer(serverNumber, ipaddress);
+            if (found) {
+                try {
+                    send(ShardProtocol.HIT, taskId, serverNumber);
+                } catch (IOException ex) {
+                    throw new IllegalStateException("Lost the coordinator", ex);
+                }
+            }
+            return found;
+        }
+        
+        @Override
+        public void reportAsTrustworthy(String host) {
+            delegate.reportAsTrustworthy(host);
+        }
+        
+        @Override
+        public void reportAsNotTrustworthy(String host) {
+            delegate.reportAsNotTrustworthy(host);
+        }
+    }
+    
+    public static void main(String[] args) throws IOException {
+        if (args.length != 4) {
+            System.err.println("Usage: ShardWorker <host> <port> <index> <threads>");
+            System.exit(1);
+        }
+        try (Socket socket = new Socket(args[0], Integer.parseInt(args[1]))) {
+            socket.setTcpNoDelay(true);
+            ShardWorker worker = new ShardWorker(socket,
+                    new FacadeDataSource(HostBlacklistsDataSourceFacade.getInstance()),
+                    Integer.parseInt(args[3]));
+            worker.serve(Integer.parseInt(args[2]));
+        }
+        System.exit(0);
+    }
+    
+    private static final Logger LOG = Logger.getLogger(ShardWorker.class.getName());
+}
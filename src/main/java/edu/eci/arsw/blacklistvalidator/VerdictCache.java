@@ -0,0 +1,338 @@
+package edu.eci.arsw.blacklistvalidator;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntFunction;
+import java.util.function.Predicate;
+
+/**
+ * Caché acotada de veredictos por IP, con la dirección empaquetada en un int
+ * como llave (ver IpAddresses). Cada veredicto expira según su TTL y, cuando
+ * un segmento está lleno, se descarta el menos usado recientemente (LRU).
+ * Las IPs confiables se guardan con su propio TTL (caché negativa), que
+ * puede ser 0 para no guardarlas.
+ *
+ * Los hilos que piden a la vez una misma IP ausente comparten una sola carga
+ * en vuelo en lugar de lanzar búsquedas duplicadas.
+ */
+public class VerdictCache {
+    
+    private static final int SEGMENTS = 16;
+    
+    private final Segment[] segments = new Segment[SEGMENTS];
+    private final long notTrustworthyTtlNanos;
+    private final long trustworthyTtlNanos;
+    private final ConcurrentHashMap<Integer, CompletableFuture<HostVerdict>> inFlight = new ConcurrentHashMap<>();
+    
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder expirations = new LongAdder();
+    private final LongAdder coalescedLoads = new LongAdder();
+    
+    /**
+     * @param maximumSize número máximo de veredictos guardados; como cada
+     * segmento tiene su parte fija, se puede descartar un veredicto antes de
+     * llegar a este total
+     * @param notTrustworthyTtl tiempo que se guarda un veredicto NOT trustworthy
+     * @param trustworthyTtl tiempo que se guarda un veredicto trustworthy; 0
+     * para no guardarlos
+     */
+    public VerdictCache(int maximumSize, long notTrustworthyTtl, long trustworthyTtl, TimeUnit unit) {
+        if (maximumSize < SEGMENTS) {
+            throw new IllegalArgumentException("maximumSize must be at least " + SEGMENTS + ": " + maximumSize);
+        }
+        // El resto se reparte entre los primeros segmentos para que la
+        // suma de capacidades sea exactamente maximumSize
+        for (int i = 0; i < SEGMENTS; i++) {
+            segments[i] = new Segment(maximumSize / SEGMENTS + (i < maximumSize % SEGMENTS ? 1 : 0));
+        }
+        this.notTrustworthyTtlNanos = unit.toNanos(notTrustworthyTtl);
+        this.trustworthyTtlNanos = unit.toNanos(trustworthyTtl);
+    }
+    
+    /**
+     * @return el veredicto guardado para la IP, o null si no está o expiró
+     */
+    public HostVerdict getIfPresent(int ipaddress) {
+        HostVerdict verdict = segmentFor(ipaddress).get(ipaddress, System.nanoTime());
+        if (verdict != null) {
+            hits.increment();
+        } else {
+            misses.increment();
+        }
+        return verdict;
+    }
+    
+    /**
+     * Guarda el veredicto con el TTL que le corresponde
+     */
+    public void put(int ipaddress, HostVerdict verdict) {
+        long ttl = verdict.isTrustworthy() ? trustworthyTtlNanos : notTrustworthyTtlNanos;
+        if (ttl <= 0) {
+            return;
+        }
+        segmentFor(ipaddress).put(ipaddress, verdict, System.nanoTime() + ttl);
+    }
+    
+    /**
+     * Devuelve el veredicto guardado o lo carga con loader. Si otro hilo ya
+     * está cargando la misma IP se espera su resultado en lugar de cargarla
+     * de nuevo.
+     */
+    public HostVerdict get(int ipaddress, IntFunction<HostVerdict> loader) {
+        return get(ipaddress, loader, verdict -> true);
+    }
+    
+    /**
+     * Como get(ipaddress, loader), pero el veredicto cargado sólo se guarda
+     * si cumple cacheable; si no, se entrega a quien lo cargó y a los hilos
+     * que esperaban esa carga, sin que ninguna otra consulta lo vea.
+     */
+    public HostVerdict get(int ipaddress, IntFunction<HostVerdict> loader, Predicate<HostVerdict> cacheable) {
+        HostVerdict verdict = getIfPresent(ipaddress);
+        if (verdict != null) {
+            return verdict;
+        }
+        return load(ipaddress, loader, cacheable);
+    }
+    
+    /**
+     * La parte de get que sigue a un getIfPresent fallido, para quien ya lo
+     * hizo y no quiere contar otro fallo
+     */
+    HostVerdict load(int ipaddress, IntFunction<HostVerdict> loader, Predicate<HostVerdict> cacheable) {
+        HostVerdict verdict;
+        CompletableFuture<HostVerdict> load = new CompletableFuture<>();
+        CompletableFuture<HostVerdict> current = inFlight.putIfAbsent(ipaddress, load);
+        if (current != null) {
+            coalescedLoads.increment();
+            return await(current);
+        }
+        try {
+            // Otra carga pudo terminar entre el primer getIfPresent y el
+            // putIfAbsent; su veredicto ya está guardado. Esta consulta no
+            // cuenta como otro fallo: el del getIfPresent ya se contó
+            verdict = segmentFor(ipaddress).get(ipaddress, System.nanoTime());
+            if (verdict != null) {
+                load.complete(verdict);
+                return verdict;
+            }
+            verdict = loader.apply(ipaddress);
+            if (cacheable.test(verdict)) {
+                put(ipaddress, verdict);
+            }
+            load.complete(verdict);
+            return verdict;
+        } catch (RuntimeException | Error ex) {
+            load.completeExceptionally(ex);
+            throw ex;
+        } finally {
+            inFlight.remove(ipaddress, load);
+        }
+    }
+    
+    public void invalidate(int ipaddress) {
+        segmentFor(ipaddress).remove(ipaddress);
+    }
+    
+    public long getHitCount() {
+        return hits.sum();
+    }
+    
+    public long getMissCount() {
+        return misses.sum();
+    }
+    
+    /**
+     * @return veredictos descartados por falta de espacio
+     */
+    public long getEvictionCount() {
+        return evictions.sum();
+    }
+    
+    /**
+     * @return veredictos descartados porque se venció su TTL
+     */
+    public long getExpirationCount() {
+        return expirations.sum();
+    }
+    
+    /**
+     * @return búsquedas que se ahorraron esperando una carga en vuelo
+     */
+    public long getCoalescedLoadCount() {
+        return coalescedLoads.sum();
+    }
+    
+    public int size() {
+        int size = 0;
+        for (Segment segment : segments) {
+            size += segment.size();
+        }
+        return size;
+    }
+    
+    @Override
+    public String toString() {
+        return "VerdictCache{size=" + size() + ", hits=" + getHitCount() + ", misses=" + getMissCount()
+                + ", evictions=" + getEvictionCount() + ", expirations=" + getExpirationCount()
+                + ", coalescedLoads=" + getCoalescedLoadCount() + "}";
+    }
+    
+    private static HostVerdict await(CompletableFuture<HostVerdict> load) {
+        try {
+            return load.get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for an in-flight check", ex);
+        } catch (ExecutionException ex) {
+            throw new CompletionException(ex.getCause());
+        }
+    }
+    
+    private Segment segmentFor(int ipaddress) {
+        return segments[mix(ipaddress) >>> 28];
+    }
+    
+    private static int mix(int key) {
+        int h = key * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+    
+    private static final class Entry {
+        final int key;
+        HostVerdict verdict;
+        long expiresAt;
+        Entry nextInBucket;
+        Entry newer;
+        Entry older;
+        
+        Entry(int key) {
+            this.key = key;
+        }
+    }
+    
+    /**
+     * Tabla hash con llaves int y lista doblemente enlazada en orden de uso,
+     * protegida por su propio candado.
+     */
+    private final class Segment {
+        
+        private final int capacity;
+        private final Entry[] buckets;
+        private Entry newest;
+        private Entry oldest;
+        private int size;
+        
+        Segment(int capacity) {
+            this.capacity = capacity;
+            this.buckets = new Entry[Integer.highestOneBit(Math.max(capacity, 2) * 2 - 1) << 1];
+        }
+        
+        synchronized HostVerdict get(int key, long now) {
+            Entry entry = find(key);
+            if (entry == null) {
+                return null;
+            }
+            if (now - entry.expiresAt >= 0) {
+                unlink(entry);
+                expirations.increment();
+                return null;
+            }
+            moveToNewest(entry);
+            return entry.verdict;
+        }
+        
+        synchronized void put(int key, HostVerdict verdict, long expiresAt) {
+            Entry entry = find(key);
+            if (entry == null) {
+                if (size == capacity) {
+                    unlink(oldest);
+                    evictions.increment();
+                }
+                entry = new Entry(key);
+                int bucket = mix(key) & (buckets.length - 1);
+                entry.nextInBucket = buckets[bucket];
+                buckets[bucket] = entry;
+                size++;
+            } else {
+                detach(entry);
+            }
+            entry.verdict = verdict;
+            entry.expiresAt = expiresAt;
+            attachNewest(entry);
+        }
+        
+        synchronized void remove(int key) {
+            Entry entry = find(key);
+            if (entry != null) {
+                unlink(entry);
+            }
+        }
+        
+        synchronized int size() {
+            return size;
+        }
+        
+        private Entry find(int key) {
+            Entry entry = buckets[mix(key) & (buckets.length - 1)];
+            while (entry != null && entry.key != key) {
+                entry = entry.nextInBucket;
+            }
+            return entry;
+        }
+        
+        private void unlink(Entry entry) {
+            int bucket = mix(entry.key) & (buckets.length - 1);
+            if (buckets[bucket] == entry) {
+                buckets[bucket] = entry.nextInBucket;
+            } else {
+                Entry previous = buckets[bucket];
+                while (previous.nextInBucket != entry) {
+                    previous = previous.nextInBucket;
+                }
+                previous.nextInBucket = entry.nextInBucket;
+            }
+            detach(entry);
+            size--;
+        }
+        
+        private void moveToNewest(Entry entry) {
+            if (entry != newest) {
+                detach(entry);
+                attachNewest(entry);
+            }
+        }
+        
+        private void detach(Entry entry) {
+            if (entry.newer != null) {
+                entry.newer.older = entry.older;
+            } else {
+                newest = entry.older;
+            }
+            if (entry.older != null) {
+                entry.older.newer = entry.newer;
+            } else {
+                oldest = entry.newer;
+            }
+            entry.newer = null;
+            entry.older = null;
+        }
+        
+        private void attachNewest(Entry entry) {
+            entry.older = newest;
+            if (newest != null) {
+                newest.newer = entry;
+            }
+            newest = entry;
+            if (oldest == null) {
+                oldest = entry;
+            }
+        }
+    }
+}
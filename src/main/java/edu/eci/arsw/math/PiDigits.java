@@ -1,22 +1,41 @@
 package edu.eci.arsw.math;
 
+import java.util.LinkedHashMap;
+import java.util.Map;
+
 /**
  * Clase para obtener dígitos hexadecimales de Pi
+ *
+ * Los dígitos se calculan con la fórmula de Bailey-Borwein-Plouffe, que da
+ * los dígitos en una posición sin calcular los anteriores. Se calculan en
+ * bloques de BLOCK_DIGITS dígitos alineados, que se guardan en una caché
+ * para no repetir bloques de rangos que se solapan.
+ *
+ * Cada evaluación de la serie en doble precisión acumula un error de
+ * redondeo que crece con la posición, así que de cada evaluación sólo se
+ * toman los dígitos que ese error no alcanza (reliableDigits); lejos del
+ * inicio un bloque se arma con varias evaluaciones. Además, si lo que queda
+ * después de los dígitos tomados está tan cerca de 0 o de 1 que el error
+ * podría cambiar el último (una racha de 0 o de F), se toman menos dígitos
+ * de esa evaluación (checkedDigits).
  */
 public class PiDigits {
     
-    // Dígitos hexadecimales de Pi (primeros 80 dígitos)
-    private static final byte[] PI_DIGITS = {
-        0x2, 0x4, 0x3, 0xF, 0x6, 0xA, 0x8, 0x8,
-        0x8, 0x5, 0xA, 0x3, 0x0, 0x8, 0xD, 0x3,
-        0x1, 0x3, 0x1, 0x9, 0x8, 0xA, 0x2, 0xE,
-        0x0, 0x3, 0x7, 0x0, 0x7, 0x3, 0x4, 0x4,
-        0xA, 0x4, 0x0, 0x9, 0x3, 0x8, 0x2, 0x2,
-        0x2, 0x9, 0x9, 0xF, 0x3, 0x1, 0xD, 0x0,
-        0x0, 0x8, 0x2, 0xE, 0xF, 0xA, 0x9, 0x8,
-        0xE, 0xC, 0x4, 0xE, 0x6, 0xC, 0x8, 0x9,
-        0x4, 0x5, 0x2, 0x8, 0x2, 0x1, 0xE, 0x6,
-        0x3, 0x8, 0xD, 0x0, 0x1, 0x3, 0x7, 0x7
+    static final int BLOCK_DIGITS = 6;
+    // Para que 16^e mod (8k + 6) no desborde un long en powMod16
+    static final int MAX_POSITION = 1 << 28;
+    private static final int CACHED_BLOCKS = 1 << 16;
+    private static final double EPSILON = 1e-17;
+    // Cota del error de cada término de la serie: el redondeo del cociente
+    // y el de la suma, 2^-52, por 8 = 4 + 2 + 1 + 1, los coeficientes de
+    // las cuatro series
+    private static final double ERROR_PER_TERM = 8 * Math.ulp(1.0);
+    
+    private static final Map<Integer, Integer> BLOCKS = new LinkedHashMap<Integer, Integer>(1024, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, Integer> eldest) {
+            return size() > CACHED_BLOCKS;
+        }
     };
     
     /**
@@ -26,9 +45,251 @@ public class PiDigits {
      * @return array de bytes con los dígitos hexadecimales
      */
     public static byte[] getDigits(int start, int count) {
-        byte[] result = new byte[count];
+        return getDigits(start, count, 1);
+    }
+    
+    /**
+     * Obtiene dígitos hexadecimales de Pi repartiendo los bloques entre N
+     * hilos
+     * @param start posición inicial (0 es el primer dígito después del punto)
+     * @param count cantidad de dígitos a obtener
+     * @param N número de hilos
+     * @return array de bytes con los dígitos hexadecimales
+     * @throws ArithmeticException si la doble precisión no alcanza para
+     * decidir algún dígito
+     */
+    public static byte[] getDigits(int start, int count, int N) {
+        if (start < 0 || count < 0 || (long) start + count > MAX_POSITION) {
+            throw new IllegalArgumentException("Invalid range: start=" + start + ", count=" + count);
+        }
+        if (N < 1) {
+            throw new IllegalArgumentException("N must be at least 1: " + N);
+        }
+        byte[] digits = new byte[count];
+        if (count == 0) {
+            return digits;
+        }
+        
+        int firstBlock = start / BLOCK_DIGITS;
+        int blocks = (start + count - 1) / BLOCK_DIGITS - firstBlock + 1;
+        int threads = Math.min(N, blocks);
+        if (threads == 1) {
+            fill(digits, start, start, start + count);
+            return digits;
+        }
+        
+        // Cada hilo calcula bloques consecutivos, así ningún bloque se
+        // calcula dos veces
+        PiDigitsThread[] workers = new PiDigitsThread[threads];
+        for (int i = 0; i < threads; i++) {
+            int from = Math.max(start, (firstBlock + blocks * i / threads) * BLOCK_DIGITS);
+            int to = Math.min(start + count, (firstBlock + blocks * (i + 1) / threads) * BLOCK_DIGITS);
+            workers[i] = new PiDigitsThread(digits, start, from, to);
+        }
+        runAll(workers);
+        return digits;
+    }
+    
+    /**
+     * Arranca los hilos y los espera; si alguno falló, relanza su error para
+     * que su rango no quede en ceros sin aviso
+     */
+    static void runAll(PiDigitsThread[] workers) {
+        for (PiDigitsThread worker : workers) {
+            worker.start();
+        }
+        for (PiDigitsThread worker : workers) {
+            try {
+                worker.join();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while computing digits of Pi", ex);
+            }
+        }
+        for (PiDigitsThread worker : workers) {
+            Throwable failure = worker.getFailure();
+            if (failure instanceof RuntimeException) {
+                throw (RuntimeException) failure;
+            }
+            if (failure instanceof Error) {
+                throw (Error) failure;
+            }
+            if (failure != null) {
+                throw new IllegalStateException("Could not compute digits of Pi", failure);
+            }
+        }
+    }
+    
+    /**
+     * Descarta los bloques guardados, p. ej. para medir el cálculo sin la
+     * caché
+     */
+    public static void clearCache() {
+        synchronized (BLOCKS) {
+            BLOCKS.clear();
+        }
+    }
+    
+    /**
+     * Escribe en digits[position - start] los dígitos de [from, to)
+     */
+    static void fill(byte[] digits, int start, int from, int to) {
+        int position = from;
+        while (position < to) {
+            int block = position / BLOCK_DIGITS;
+            int value = getBlock(block);
+            int end = Math.min(to, (block + 1) * BLOCK_DIGITS);
+            for (; position < end; position++) {
+                int shift = 4 * (BLOCK_DIGITS - 1 - position % BLOCK_DIGITS);
+                digits[position - start] = (byte) ((value >>> shift) & 0xF);
+            }
+        }
+    }
+    
+    /**
+     * @return los BLOCK_DIGITS dígitos desde la posición block * BLOCK_DIGITS,
+     * de a 4 bits, el primero en los bits más altos
+     */
+    static int getBlock(int block) {
+        Integer cached;
+        synchronized (BLOCKS) {
+            cached = BLOCKS.get(block);
+        }
+        if (cached != null) {
+            return cached;
+        }
+        // Se calcula fuera del candado; dos hilos que pidan el mismo bloque a
+        // la vez lo calculan ambos, con el mismo resultado
+        int value = computeBlock(block * BLOCK_DIGITS);
+        synchronized (BLOCKS) {
+            BLOCKS.put(block, value);
+        }
+        return value;
+    }
+    
+    /**
+     * Dígitos hexadecimales que una evaluación en la posición dada entrega
+     * sin que los alcance el error acumulado: la serie suma position + 1
+     * términos, cada uno con error de a lo sumo ERROR_PER_TERM.
+     */
+    static int reliableDigits(int position) {
+        double error = errorBound(position);
+        int digits = (int) Math.floor(-Math.log(error) / Math.log(16));
+        return Math.max(1, Math.min(BLOCK_DIGITS, digits));
+    }
+    
+    /**
+     * Los BLOCK_DIGITS dígitos desde position, con tantas evaluaciones de la
+     * serie como hagan falta para usar sólo dígitos confiables
+     */
+    private static int computeBlock(int position) {
+        // La última evaluación del bloque es la de mayor error
+        return computeBlock(position, reliableDigits(position + BLOCK_DIGITS - 1));
+    }
+    
+    static int computeBlock(int position, int digitsPerEvaluation) {
+        int value = 0;
+        int done = 0;
+        while (done < BLOCK_DIGITS) {
+            double x = fraction(position + done);
+            int digits = checkedDigits(x, Math.min(digitsPerEvaluation, BLOCK_DIGITS - done),
+                    errorBound(position + done));
+            if (digits == 0) {
+                throw new ArithmeticException("Hex digit " + (position + done)
+                        + " of Pi cannot be decided in double precision");
+            }
+            value = (value << (4 * digits)) | leadingDigits(x, digits);
+            done += digits;
+        }
+        return value;
+    }
+    
+    /**
+     * Cuántos de los primeros count dígitos de x se pueden tomar: tras k
+     * dígitos el error pasa a ser error * 16^k, y lo que queda debe estar a
+     * más de eso de 0 y de 1 para que el k-ésimo dígito no cambie
+     * @return entre 0 y count
+     */
+    static int checkedDigits(double x, int count, double error) {
+        for (int digits = count; digits > 0; digits--) {
+            double rest = x;
+            for (int i = 0; i < digits; i++) {
+                rest *= 16;
+                rest -= (int) rest;
+            }
+            double scaledError = error * Math.pow(16, digits);
+            if (rest > scaledError && 1 - rest > scaledError) {
+                return digits;
+            }
+        }
+        return 0;
+    }
+    
+    /**
+     * Cota del error de una evaluación en la posición dada
+     */
+    private static double errorBound(int position) {
+        return ERROR_PER_TERM * (position + 1.0);
+    }
+    
+    /**
+     * Parte fraccionaria de 16^position * Pi = 4 S1 - 2 S4 - S5 - S6
+     */
+    private static double fraction(int position) {
+        double x = 4 * series(1, position) - 2 * series(4, position) - series(5, position) - series(6, position);
+        return x - Math.floor(x);
+    }
+    
+    /**
+     * @return los primeros count dígitos de x, el primero en los bits más
+     * altos
+     */
+    static int leadingDigits(double x, int count) {
+        int value = 0;
         for (int i = 0; i < count; i++) {
-            result[i] = PI_DIGITS[start + i];
+            x *= 16;
+            int digit = (int) x;
+            value = (value << 4) | digit;
+            x -= digit;
+        }
+        return value;
+    }
+    
+    /**
+     * Parte fraccionaria de la suma de 16^(n - k) / (8k + j) para k >= 0
+     */
+    private static double series(int j, int n) {
+        double sum = 0;
+        for (int k = 0; k <= n; k++) {
+            long denominator = 8L * k + j;
+            sum += (double) powMod16(n - k, denominator) / denominator;
+            sum -= Math.floor(sum);
+        }
+        for (int k = n + 1; ; k++) {
+            double term = Math.pow(16, n - k) / (8L * k + j);
+            if (term < EPSILON) {
+                break;
+            }
+            sum += term;
+        }
+        return sum - Math.floor(sum);
+    }
+    
+    /**
+     * 16^exponent mod modulus por cuadrados sucesivos
+     */
+    private static long powMod16(int exponent, long modulus) {
+        if (modulus == 1) {
+            return 0;
+        }
+        long result = 1;
+        long base = 16 % modulus;
+        while (exponent > 0) {
+            if ((exponent & 1) != 0) {
+                result = result * base % modulus;
+            }
+            base = base * base % modulus;
+            exponent >>= 1;
         }
         return result;
     }
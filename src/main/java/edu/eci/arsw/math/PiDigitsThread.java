@@ -0,0 +1,46 @@
+package edu.eci.arsw.math;
+
+/**
+ * Hilo que calcula los dígitos de Pi de las posiciones [from, to) y los
+ * escribe en el array compartido del rango que empieza en start
+ */
+public class PiDigitsThread extends Thread {
+    
+    private final byte[] digits;
+    private final int start;
+    private final int from;
+    private final int to;
+    private volatile Throwable failure;
+    
+    public PiDigitsThread(byte[] digits, int start, int from, int to) {
+        this.digits = digits;
+        this.start = start;
+        this.from = from;
+        this.to = to;
+    }
+    
+    @Override
+    public void run() {
+        try {
+            PiDigits.fill(digits, start, from, to);
+        } catch (Throwable ex) {
+            failure = ex;
+        }
+    }
+    
+    /**
+     * @return lo que detuvo al hilo antes de llenar su rango (p. ej. un
+     * dígito que no se pudo decidir), o null si lo llenó
+     */
+    public Throwable getFailure() {
+        return failure;
+    }
+    
+    public int getFrom() {
+        return from;
+    }
+    
+    public int getTo() {
+        return to;
+    }
+}
@@ -0,0 +1,68 @@
+package edu.eci.arsw.blacklistvalidator;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class AdaptiveScanTest {
+
+    private static final String IP = "202.24.34.55";
+    private static final int SERVERS = 30000;
+    private static final int FLOOR = 2;
+    private static final int CEILING = 64;
+    private static final int SATURATION = 8;
+
+    // Latencia fija hasta SATURATION consultas en curso; con más se multiplica
+    private static SimulatedDataSource saturatedSource() {
+        return new SimulatedDataSource(SERVERS, SimulatedDataSource.overloaded(200000L, SATURATION, 10))
+                .addOcurrence(3, IP).addOcurrence(9000, IP).addOcurrence(15001, IP)
+                .addOcurrence(22222, IP).addOcurrence(29999, IP);
+    }
+
+    @Test
+    public void workersAreAddedAndRetiredWithinTheLimits() {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(FLOOR, CEILING);
+        ExecutorService executor = Executors.newCachedThreadPool();
+        try {
+            long spreadsBefore = ScanMetrics.getInstance().getFinishSpreadCount();
+            AdaptiveScan scan = new AdaptiveScan(new ChunkScheduler(SERVERS, limiter.getLimit(), 0), IP,
+                    saturatedSource(), ScanControl.unbounded(), limiter, executor);
+            List<BlackListSegment> segments = scan.run();
+            assertTrue(ScanMetrics.getInstance().getFinishSpreadCount() > spreadsBefore);
+
+            List<Integer> ocurrences = new ArrayList<>();
+            int checked = 0;
+            for (BlackListSegment segment : segments) {
+                ocurrences.addAll(segment.getBlackListOcurrences());
+                checked += segment.getCheckedListsCount();
+            }
+            assertEquals(Arrays.asList(3, 9000, 15001, 22222, 29999), ocurrences);
+            assertEquals(SERVERS, checked);
+
+            assertTrue("no workers were added: " + scan.getSpawnedCount(),
+                    scan.getPeakActive() > FLOOR);
+            assertTrue("no workers were retired", scan.getRetiredCount() > 0);
+            assertTrue(scan.getPeakActive() <= CEILING);
+            // La fuente se satura con más de SATURATION consultas en curso:
+            // el límite debe quedar cerca de ahí y no subir hasta CEILING
+            assertTrue("limit " + limiter.getLimit(), limiter.getLimit() >= FLOOR);
+            assertTrue("limit " + limiter.getLimit(), limiter.getLimit() < 4 * SATURATION);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void adaptiveCheckHostMatchesFixedThreads() {
+        HostBlackListsValidator validator = new HostBlackListsValidator();
+        validator.setDataSource(saturatedSource());
+        validator.setConcurrencyLimiter(new ConcurrencyLimiter(FLOOR, CEILING));
+
+        assertEquals(validator.checkHost(IP, 8), validator.checkHost(IP));
+    }
+}
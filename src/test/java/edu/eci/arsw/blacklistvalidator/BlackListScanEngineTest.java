@@ -0,0 +1,125 @@
+package edu.eci.arsw.blacklistvalidator;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assume;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class BlackListScanEngineTest {
+
+    private static final String IP = "202.24.34.55";
+    private static final int SERVERS = 3000;
+
+    private static SimulatedDataSource dataSource() {
+        return new SimulatedDataSource(SERVERS, () -> 50000L)
+                .addOcurrence(0, IP).addOcurrence(7, IP).addOcurrence(1500, IP)
+                .addOcurrence(2001, IP).addOcurrence(2999, IP);
+    }
+
+    @Test
+    public void everyStrategyFindsAllOcurrences() {
+        for (ScanStrategy strategy : ScanStrategy.values()) {
+            try (BlackListScanEngine engine = new BlackListScanEngine(strategy, 8)) {
+                List<BlackListSegment> segments = engine.scan(IP, 8, dataSource(),
+                        new ChunkScheduler(SERVERS, 8, 0), ScanControl.unbounded());
+
+                List<Integer> ocurrences = new ArrayList<>();
+                int checked = 0;
+                for (BlackListSegment segment : segments) {
+                    ocurrences.addAll(segment.getBlackListOcurrences());
+                    checked += segment.getCheckedListsCount();
+                }
+                assertEquals(strategy.name(), Arrays.asList(0, 7, 1500, 2001, 2999), ocurrences);
+                assertEquals(strategy.name(), SERVERS, checked);
+            }
+        }
+    }
+
+    @Test
+    public void everyStrategyStopsAtTheAlarm() {
+        for (ScanStrategy strategy : ScanStrategy.values()) {
+            try (BlackListScanEngine engine = new BlackListScanEngine(strategy, 8)) {
+                ScanControl control = new ScanControl(2);
+                List<BlackListSegment> segments = engine.scan(IP, 8, dataSource(),
+                        new ChunkScheduler(SERVERS, 8, 0), control);
+
+                int checked = 0;
+                for (BlackListSegment segment : segments) {
+                    checked += segment.getCheckedListsCount();
+                }
+                assertTrue(strategy.name(), control.isAlarmReached());
+                assertTrue(strategy.name(), checked < SERVERS);
+            }
+        }
+    }
+
+    /**
+     * Versión de la JVM en que corren las pruebas: 8 para "1.8", 21 para "21"
+     */
+    private static int javaVersion() {
+        String version = System.getProperty("java.specification.version");
+        return Integer.parseInt(version.startsWith("1.") ? version.substring(2) : version);
+    }
+
+    @Test
+    public void virtualThreadsRunTheSegmentsFromJava21() {
+        Assume.assumeTrue(javaVersion() >= 21);
+        final Set<String> threadNames = ConcurrentHashMap.newKeySet();
+        SimulatedDataSource source = new SimulatedDataSource(SERVERS, () -> {
+            threadNames.add(Thread.currentThread().getName());
+            return 50000L;
+        });
+        try (BlackListScanEngine engine = new BlackListScanEngine(ScanStrategy.VIRTUAL_THREADS, 8)) {
+            assertEquals(BlackListScanEngine.ExecutorKind.VIRTUAL_THREAD_PER_TASK, engine.getExecutorKind());
+            engine.scan(IP, 8, source, new ChunkScheduler(SERVERS, 8, 0), ScanControl.unbounded());
+            // Los hilos virtuales no tienen nombre
+            assertEquals(Collections.singleton(""), threadNames);
+        }
+    }
+
+    @Test
+    public void virtualThreadsFallBackToAPlatformPoolBeforeJava21() {
+        Assume.assumeTrue(javaVersion() < 21);
+        try (BlackListScanEngine engine = new BlackListScanEngine(ScanStrategy.VIRTUAL_THREADS, 8)) {
+            assertEquals(BlackListScanEngine.ExecutorKind.CACHED_PLATFORM_POOL, engine.getExecutorKind());
+            assertTrue(engine.toString().contains("CACHED_PLATFORM_POOL"));
+        }
+    }
+
+    @Test
+    public void everyStrategyRecordsTheFinishSpread() {
+        for (ScanStrategy strategy : ScanStrategy.values()) {
+            try (BlackListScanEngine engine = new BlackListScanEngine(strategy, 8)) {
+                long before = ScanMetrics.getInstance().getFinishSpreadCount();
+                engine.scan(IP, 8, dataSource(), new ChunkScheduler(SERVERS, 8, 0), ScanControl.unbounded());
+                assertTrue(strategy.name(), ScanMetrics.getInstance().getFinishSpreadCount() > before);
+            }
+        }
+    }
+
+    @Test
+    public void everyStrategyHonorsTheThreadCount() {
+        for (ScanStrategy strategy : ScanStrategy.values()) {
+            try (BlackListScanEngine engine = new BlackListScanEngine(strategy, 8)) {
+                for (int threads : new int[]{2, 8}) {
+                    final AtomicInteger maxInFlight = new AtomicInteger(0);
+                    SimulatedDataSource source = new SimulatedDataSource(SERVERS, inFlight -> {
+                        maxInFlight.accumulateAndGet(inFlight, Math::max);
+                        return 50000L;
+                    });
+                    engine.scan(IP, threads, source, new ChunkScheduler(SERVERS, threads, 0),
+                            ScanControl.unbounded());
+                    assertTrue(strategy + " with " + threads + " threads ran " + maxInFlight.get()
+                            + " probes at once", maxInFlight.get() <= threads);
+                }
+            }
+        }
+    }
+}
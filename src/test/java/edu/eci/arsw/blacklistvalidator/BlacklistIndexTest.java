@@ -0,0 +1,215 @@
+package edu.eci.arsw.blacklistvalidator;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class BlacklistIndexTest {
+
+    private Path indexFile;
+
+    @Before
+    public void setUp() throws IOException {
+        indexFile = Files.createTempFile("blacklist-index", ".bin");
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(indexFile);
+    }
+
+    @Test
+    public void compiledIndexAnswersKnownOccurrences() throws IOException {
+        BlacklistIndex.builder(70000)
+                .add(10034, "202.24.34.55")
+                .add(29, "202.24.34.55")
+                .add(29, "202.24.34.55")
+                .add(23, "200.24.34.55")
+                .writeTo(indexFile);
+
+        BlacklistIndex index = BlacklistIndex.open(indexFile);
+        assertEquals(70000, index.getServersCount());
+        assertEquals(2, index.getIpCount());
+        assertArrayEquals(new int[]{29, 10034}, index.serversOf(IpAddresses.pack("202.24.34.55")));
+        assertArrayEquals(new int[]{23}, index.serversOf(IpAddresses.pack("200.24.34.55")));
+        assertArrayEquals(new int[0], index.serversOf(IpAddresses.pack("212.24.24.55")));
+    }
+
+    @Test
+    public void bloomFilterHasNoFalseNegatives() throws IOException {
+        Random random = new Random(7);
+        int[] hosts = new int[5000];
+        BlacklistIndex.Builder builder = BlacklistIndex.builder(80000);
+        for (int i = 0; i < hosts.length; i++) {
+            hosts[i] = random.nextInt();
+            builder.add(random.nextInt(80000), hosts[i]);
+        }
+        builder.writeTo(indexFile);
+
+        BlacklistIndex index = BlacklistIndex.open(indexFile);
+        for (int host : hosts) {
+            assertTrue(index.mightContain(host));
+            assertEquals(1, index.serversOf(host).length);
+        }
+        int falsePositives = 0;
+        for (int i = 0; i < 100000; i++) {
+            if (index.mightContain(random.nextInt())) {
+                falsePositives++;
+            }
+        }
+        assertTrue("false positives: " + falsePositives, falsePositives < 3000);
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsFilesThatAreNotIndexes() throws IOException {
+        Files.write(indexFile, new byte[64]);
+        BlacklistIndex.open(indexFile);
+    }
+
+    @Test
+    public void rejectsTruncatedAndCorruptedFiles() throws IOException {
+        BlacklistIndex.builder(70000)
+                .add(10034, "202.24.34.55")
+                .add(23, "200.24.34.55")
+                .writeTo(indexFile);
+        byte[] valid = Files.readAllBytes(indexFile);
+
+        Files.write(indexFile, Arrays.copyOf(valid, valid.length - 4));
+        assertNotAnIndex();
+        HostBlackListsValidator validator = new HostBlackListsValidator();
+        assertFalse(validator.loadLocalIndex(indexFile));
+        assertNull(validator.getLocalIndex());
+
+        // Un número de IPs enorme no debe desbordar los desplazamientos
+        byte[] corrupted = valid.clone();
+        ByteBuffer.wrap(corrupted).putInt(12, Integer.MAX_VALUE);
+        Files.write(indexFile, corrupted);
+        assertNotAnIndex();
+
+    }
+
+    @Test
+    public void validIndexSkipsDataSourceProbes() throws IOException {
+        BlacklistIndex.builder(1000)
+                .add(10, "202.24.34.55")
+                .add(400, "202.24.34.55")
+                .add(1, "200.24.34.55").add(2, "200.24.34.55").add(3, "200.24.34.55")
+                .add(4, "200.24.34.55").add(5, "200.24.34.55")
+                .writeTo(indexFile);
+        SimulatedDataSource source = new SimulatedDataSource(3000, () -> 10000L);
+        source.addOcurrence(1500, "202.24.34.55").addOcurrence(2500, "202.24.34.55");
+        // Las listas del índice no se consultan en la fuente
+        source.addOcurrence(700, "202.24.34.55");
+
+        HostBlackListsValidator validator = new HostBlackListsValidator();
+        validator.setDataSource(source);
+        assertTrue(validator.loadLocalIndex(indexFile));
+
+        assertEquals(Arrays.asList(10, 400, 1500, 2500), validator.checkHost("202.24.34.55", 4));
+        assertEquals(3000 - 1000, source.getProbeCount());
+
+        // El índice ya tiene las ocurrencias de la alarma: no se consulta nada
+        assertEquals(Arrays.asList(1, 2, 3, 4, 5), validator.checkHost("200.24.34.55", 4, true));
+        assertEquals(3000 - 1000, source.getProbeCount());
+    }
+
+    @Test
+    public void nonCanonicalAddressSkipsTheIndex() throws IOException {
+        BlacklistIndex.builder(1000)
+                .add(10, "202.24.34.55")
+                .writeTo(indexFile);
+        SimulatedDataSource source = new SimulatedDataSource(3000, () -> 10000L);
+        source.addOcurrence(700, "202.24.34.055");
+
+        HostBlackListsValidator validator = new HostBlackListsValidator();
+        validator.setDataSource(source);
+        assertTrue(validator.loadLocalIndex(indexFile));
+
+        assertEquals(Arrays.asList(700), validator.checkHost("202.24.34.055", 4));
+        assertEquals(3000, source.getProbeCount());
+    }
+
+    @Test
+    public void damagedEntryFallsBackToTheFacade() throws IOException {
+        BlacklistIndex.builder(70000)
+                .add(23, "200.24.34.55")
+                .add(29, "202.24.34.55")
+                .writeTo(indexFile);
+        byte[] corrupted = Files.readAllBytes(indexFile);
+        // La lista de servidores de 202.24.34.55 apunta fuera de las ocurrencias
+        ByteBuffer.wrap(corrupted).putInt(corrupted.length - 3 * 4, 5);
+        Files.write(indexFile, corrupted);
+
+        // Abrir sólo revisa el encabezado; verify revisa todo
+        BlacklistIndex index = BlacklistIndex.open(indexFile);
+        try {
+            index.verify();
+            fail("Verified a damaged index");
+        } catch (IOException expected) {
+        }
+        assertNull(index.serversOf(IpAddresses.pack("202.24.34.55")));
+        assertArrayEquals(new int[]{23}, index.serversOf(IpAddresses.pack("200.24.34.55")));
+
+        HostBlackListsValidator validator = new HostBlackListsValidator();
+        validator.setLocalIndex(index);
+        assertEquals(Arrays.asList(29, 10034, 20200, 31000, 70500), validator.checkHost("202.24.34.55", 50));
+    }
+
+    @Test
+    public void staleIndexFallsBackToTheFacade() throws IOException {
+        // Compilado para más listas de las que tiene la fachada (80000)
+        BlacklistIndex.builder(90000)
+                .add(23, "200.24.34.55")
+                .writeTo(indexFile);
+        HostBlackListsValidator validator = new HostBlackListsValidator();
+        assertFalse(validator.loadLocalIndex(indexFile));
+
+        validator.setLocalIndex(BlacklistIndex.open(indexFile));
+        assertEquals(Arrays.asList(23, 50, 200, 500, 1000), validator.checkHost("200.24.34.55", 10, true));
+        assertNull(validator.getLocalIndex());
+    }
+
+    @Test
+    public void oldIndexFallsBackToTheFacade() throws IOException {
+        long twoDaysAgo = System.currentTimeMillis() - TimeUnit.DAYS.toMillis(2);
+        BlacklistIndex.builder(1000)
+                .add(10, "202.24.34.55")
+                .compiledAt(twoDaysAgo)
+                .writeTo(indexFile);
+        assertEquals(twoDaysAgo, BlacklistIndex.open(indexFile).getCompiledAtMillis());
+        SimulatedDataSource source = new SimulatedDataSource(3000, () -> 10000L);
+        // Listada después de compilar el índice
+        source.addOcurrence(10, "202.24.34.55").addOcurrence(700, "202.24.34.55");
+
+        HostBlackListsValidator validator = new HostBlackListsValidator();
+        validator.setDataSource(source);
+        assertFalse(validator.loadLocalIndex(indexFile));
+
+        // Mientras se acepte su edad, el índice manda en las listas que cubre
+        validator.setMaxLocalIndexAge(3, TimeUnit.DAYS);
+        assertTrue(validator.loadLocalIndex(indexFile));
+        assertEquals(Arrays.asList(10), validator.checkHost("202.24.34.55", 4));
+        assertEquals(3000 - 1000, source.getProbeCount());
+
+        validator.setMaxLocalIndexAge(1, TimeUnit.DAYS);
+        assertEquals(Arrays.asList(10, 700), validator.checkHost("202.24.34.55", 4));
+        assertNull(validator.getLocalIndex());
+    }
+
+    private void assertNotAnIndex() {
+        try {
+            BlacklistIndex.open(indexFile);
+            fail("Opened a damaged index");
+        } catch (IOException expected) {
+        }
+    }
+}
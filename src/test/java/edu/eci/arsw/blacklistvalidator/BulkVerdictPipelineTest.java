@@ -0,0 +1,132 @@
+package edu.eci.arsw.blacklistvalidator;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class BulkVerdictPipelineTest {
+
+    private static final String INPUT = "# hosts de prueba\n"
+            + "200.24.34.55\n"
+            + "  202.24.34.54\r\n"
+            + "not-an-ip\n"
+            + "\n"
+            + "212.24.24.55\n"
+            + "200.24.34.55\n"
+            + "202.24.34.55";
+
+    private static final List<String> EXPECTED = Arrays.asList(
+            "200.24.34.55\tnot-trustworthy\t23,50,200,500,1000",
+            "202.24.34.54\ttrustworthy\t39,10134,20300,70210",
+            "212.24.24.55\ttrustworthy\t",
+            "200.24.34.55\tnot-trustworthy\t23,50,200,500,1000",
+            "202.24.34.55\tnot-trustworthy\t29,10034,20200,31000,70500");
+
+    private Path directory;
+    private Path input;
+    private Path output;
+    private Path progress;
+    private HostBlackListsValidator validator;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("bulk-verdicts");
+        input = directory.resolve("ips.txt");
+        output = directory.resolve("verdicts.tsv");
+        progress = directory.resolve("verdicts.tsv.progress");
+        Files.write(input, INPUT.getBytes(StandardCharsets.US_ASCII));
+
+        // Un índice que cubre todas las listas evita consultar la fachada
+        Path indexFile = directory.resolve("index.bin");
+        BlacklistIndex.Builder builder = BlacklistIndex.builder(80000);
+        for (int server : new int[]{23, 50, 200, 500, 1000}) {
+            builder.add(server, "200.24.34.55");
+        }
+        for (int server : new int[]{29, 10034, 20200, 31000, 70500}) {
+            builder.add(server, "202.24.34.55");
+        }
+        for (int server : new int[]{39, 10134, 20300, 70210}) {
+            builder.add(server, "202.24.34.54");
+        }
+        builder.writeTo(indexFile);
+        validator = new HostBlackListsValidator();
+        validator.setLocalIndex(BlacklistIndex.open(indexFile));
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+            for (Path file : files) {
+                Files.delete(file);
+            }
+        }
+        Files.delete(directory);
+    }
+
+    private BulkVerdictPipeline pipeline() {
+        BulkVerdictPipeline pipeline = new BulkVerdictPipeline(validator, 4);
+        pipeline.setBlockSize(2);
+        pipeline.setMaxInFlight(2);
+        // Ventanas más cortas que algunas líneas del principio del archivo
+        pipeline.setWindowBytes(20);
+        return pipeline;
+    }
+
+    @Test
+    public void writesOneVerdictPerValidLine() throws Exception {
+        assertEquals(5, pipeline().run(input, output, progress));
+        assertEquals(EXPECTED, Files.readAllLines(output, StandardCharsets.US_ASCII));
+        assertFalse(Files.exists(progress));
+    }
+
+    @Test
+    public void resumesFromTheSavedProgress() throws Exception {
+        // Corte después de validar las dos primeras IPs, con una línea a
+        // medio escribir en la salida
+        String done = EXPECTED.get(0) + System.lineSeparator() + EXPECTED.get(1) + System.lineSeparator();
+        long inputOffset = INPUT.indexOf("not-an-ip");
+        Files.write(output, (done + "212.24.2").getBytes(StandardCharsets.US_ASCII));
+        Files.write(progress, (inputOffset + " " + done.length() + "\n").getBytes(StandardCharsets.US_ASCII));
+
+        assertEquals(3, pipeline().run(input, output, progress));
+        assertEquals(EXPECTED, Files.readAllLines(output, StandardCharsets.US_ASCII));
+    }
+
+    @Test
+    public void refusesToResumeWithoutTheSavedOutput() throws Exception {
+        String done = EXPECTED.get(0) + System.lineSeparator();
+        Files.write(progress, (INPUT.indexOf("  202") + " " + done.length() + "\n")
+                .getBytes(StandardCharsets.US_ASCII));
+        try {
+            pipeline().run(input, output, progress);
+            fail("Resumed without an output file");
+        } catch (IOException expected) {
+            assertTrue(expected.getMessage().contains("does not exist"));
+        }
+
+        // Una salida más corta que el progreso guardado tampoco se continúa
+        Files.write(output, done.substring(0, 5).getBytes(StandardCharsets.US_ASCII));
+        try {
+            pipeline().run(input, output, progress);
+            fail("Resumed after a gap in the output");
+        } catch (IOException expected) {
+            assertTrue(expected.getMessage().contains("has 5 bytes"));
+        }
+        assertEquals(5, Files.size(output));
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsLinesLongerThanAWindow() throws Exception {
+        Files.write(input, "200.24.34.55                              \n".getBytes(StandardCharsets.US_ASCII));
+        pipeline().run(input, output, progress);
+    }
+}
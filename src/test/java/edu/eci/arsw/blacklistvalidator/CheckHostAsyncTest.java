@@ -0,0 +1,168 @@
+package edu.eci.arsw.blacklistvalidator;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class CheckHostAsyncTest {
+
+    @Test
+    public void deadlineGivesPartialVerdict() throws Exception {
+        HostBlackListsValidator validator = new HostBlackListsValidator();
+        long begin = System.nanoTime();
+        HostVerdict verdict = validator.checkHostAsync("212.24.24.55",
+                ScanOptions.threads(8).deadline(200, TimeUnit.MILLISECONDS)).get(5, TimeUnit.SECONDS);
+
+        assertTrue(verdict.isPartial());
+        assertFalse(verdict.isAlarmReached());
+        assertTrue(verdict.getCheckedListsCount() > 0);
+        assertTrue(verdict.getCheckedListsCount() < 80000);
+        assertTrue(System.nanoTime() - begin < TimeUnit.SECONDS.toNanos(2));
+    }
+
+    @Test
+    public void cancellingStopsTheSearch() throws Exception {
+        SimulatedDataSource dataSource = new SimulatedDataSource(80000, () -> 1000000L);
+        HostBlackListsValidator validator = new HostBlackListsValidator();
+        validator.setDataSource(dataSource);
+        VerdictCache cache = new VerdictCache(100, 1, 1, TimeUnit.HOURS);
+        validator.setVerdictCache(cache);
+
+        CompletableFuture<HostVerdict> future = validator.checkHostAsync("212.24.24.55", ScanOptions.threads(8));
+        Thread.sleep(50);
+        assertTrue(future.cancel(true));
+        assertTrue(future.isCancelled());
+
+        // Los trabajadores terminan su consulta en curso y no hacen más
+        Thread.sleep(100);
+        long probes = dataSource.getProbeCount();
+        Thread.sleep(200);
+        assertEquals(probes, dataSource.getProbeCount());
+        assertTrue(probes < 80000);
+        assertEquals(0, dataSource.getReportCount("212.24.24.55"));
+
+        // La búsqueda cancelada no deja un veredicto parcial en caché
+        assertNull(cache.getIfPresent(IpAddresses.pack("212.24.24.55")));
+    }
+
+    /**
+     * Fuente cuyas consultas esperan a que se abra release
+     */
+    private static SimulatedDataSource gatedSource(int serversCount, final CountDownLatch started,
+                                                   final CountDownLatch release) {
+        return new SimulatedDataSource(serversCount, () -> 0L) {
+            @Override
+            public boolean isInBlackListServer(int serverNumber, String ipaddress) {
+                started.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                }
+                return super.isInBlackListServer(serverNumber, ipaddress);
+            }
+        };
+    }
+
+    @Test
+    public void concurrentCallsShareOneScan() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        SimulatedDataSource dataSource = gatedSource(3000, started, release);
+        dataSource.addOcurrence(29, "202.24.34.55").addOcurrence(2999, "202.24.34.55");
+        final HostBlackListsValidator validator = new HostBlackListsValidator();
+        validator.setDataSource(dataSource);
+        VerdictCache cache = new VerdictCache(100, 1, 1, TimeUnit.HOURS);
+        validator.setVerdictCache(cache);
+
+        List<CompletableFuture<HostVerdict>> futures = new ArrayList<>();
+        futures.add(validator.checkHostAsync("202.24.34.55", ScanOptions.threads(4)));
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        for (int i = 0; i < 3; i++) {
+            futures.add(validator.checkHostAsync("202.24.34.55", ScanOptions.threads(4)));
+        }
+        ExecutorService caller = Executors.newSingleThreadExecutor();
+        try {
+            Future<List<Integer>> sync = caller.submit(() -> validator.checkHost("202.24.34.55", 4));
+            while (cache.getCoalescedLoadCount() < 4) {
+                Thread.sleep(1);
+            }
+            release.countDown();
+            for (CompletableFuture<HostVerdict> future : futures) {
+                assertEquals(Arrays.asList(29, 2999), future.get(5, TimeUnit.SECONDS).getBlackListOcurrences());
+            }
+            assertEquals(Arrays.asList(29, 2999), sync.get(5, TimeUnit.SECONDS));
+        } finally {
+            caller.shutdown();
+        }
+        assertEquals(3000, dataSource.getProbeCount());
+    }
+
+    @Test
+    public void deadlineExpiresWhileWaitingForAnotherScan() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        SimulatedDataSource dataSource = gatedSource(3000, started, release);
+        HostBlackListsValidator validator = new HostBlackListsValidator();
+        validator.setDataSource(dataSource);
+        validator.setVerdictCache(new VerdictCache(100, 1, 1, TimeUnit.HOURS));
+        try {
+            CompletableFuture<HostVerdict> first = validator.checkHostAsync("212.24.24.55", ScanOptions.threads(4));
+            assertTrue(started.await(5, TimeUnit.SECONDS));
+            HostVerdict waiting = validator.checkHostAsync("212.24.24.55",
+                    ScanOptions.threads(4).deadline(100, TimeUnit.MILLISECONDS)).get(5, TimeUnit.SECONDS);
+
+            assertTrue(waiting.isPartial());
+            assertEquals(0, waiting.getCheckedListsCount());
+            assertFalse(first.isDone());
+        } finally {
+            release.countDown();
+        }
+    }
+
+    @Test
+    public void nonCanonicalAddressIsScannedWithoutACache() throws Exception {
+        SimulatedDataSource dataSource = new SimulatedDataSource(300, () -> 0L);
+        dataSource.addOcurrence(7, "200.24.34.055");
+        HostBlackListsValidator validator = new HostBlackListsValidator();
+        validator.setDataSource(dataSource);
+        HostVerdict verdict = validator.checkHostAsync("200.24.34.055", ScanOptions.threads(2))
+                .get(5, TimeUnit.SECONDS);
+        assertEquals(Arrays.asList(7), verdict.getBlackListOcurrences());
+    }
+
+    @Test
+    public void indexedHostCompletesWithoutPartialResult() throws Exception {
+        Path indexFile = Files.createTempFile("blacklist-index", ".bin");
+        try {
+            BlacklistIndex.Builder builder = BlacklistIndex.builder(80000);
+            for (int server : new int[]{23, 50, 200, 500, 1000}) {
+                builder.add(server, "200.24.34.55");
+            }
+            builder.writeTo(indexFile);
+
+            HostBlackListsValidator validator = new HostBlackListsValidator();
+            validator.setLocalIndex(BlacklistIndex.open(indexFile));
+            HostVerdict verdict = validator.checkHostAsync("200.24.34.55",
+                    ScanOptions.threads(4).deadline(1, TimeUnit.SECONDS)).get(5, TimeUnit.SECONDS);
+
+            assertFalse(verdict.isPartial());
+            assertFalse(verdict.isTrustworthy());
+            assertEquals(Arrays.asList(23, 50, 200, 500, 1000), verdict.getBlackListOcurrences());
+            assertEquals(80000, verdict.getCheckedListsCount());
+        } finally {
+            Files.deleteIfExists(indexFile);
+        }
+    }
+}
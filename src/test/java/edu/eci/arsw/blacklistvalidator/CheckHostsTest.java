@@ -0,0 +1,104 @@
+package edu.eci.arsw.blacklistvalidator;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class CheckHostsTest {
+
+    private static final int SERVERS = 4000;
+
+    @Test
+    public void duplicatesAreCheckedAndReportedOnce() {
+        SimulatedDataSource dataSource = new SimulatedDataSource(SERVERS, () -> 0L)
+                .addOcurrence(10, "10.0.0.1").addOcurrence(3000, "10.0.0.1");
+        HostBlackListsValidator validator = new HostBlackListsValidator();
+        validator.setDataSource(dataSource);
+
+        Map<String, HostVerdict> verdicts = validator.checkHosts(
+                Arrays.asList("10.0.0.1", "10.0.0.2", "10.0.0.1", "10.0.0.2", "10.0.0.1"), 4);
+
+        assertEquals(Arrays.asList("10.0.0.1", "10.0.0.2"), Arrays.asList(verdicts.keySet().toArray()));
+        assertEquals(Arrays.asList(10, 3000), verdicts.get("10.0.0.1").getBlackListOcurrences());
+        assertEquals(1, dataSource.getReportCount("10.0.0.1"));
+        assertEquals(1, dataSource.getReportCount("10.0.0.2"));
+        // Cada lista se consulta una vez por host distinto
+        assertEquals(2 * SERVERS, dataSource.getProbeCount());
+    }
+
+    @Test
+    public void eachHostStopsAtItsOwnAlarm() {
+        SimulatedDataSource dataSource = new SimulatedDataSource(SERVERS, () -> 20000L);
+        for (int server = 0; server < HostBlackListsValidator.BLACK_LIST_ALARM_COUNT; server++) {
+            dataSource.addOcurrence(server, "10.0.0.1");
+        }
+        for (int server : new int[]{100, 1000, 2000, 3000, 3990}) {
+            dataSource.addOcurrence(server, "10.0.0.2");
+        }
+        dataSource.addOcurrence(50, "10.0.0.3").addOcurrence(3999, "10.0.0.3");
+        HostBlackListsValidator validator = new HostBlackListsValidator();
+        validator.setDataSource(dataSource);
+
+        Map<String, HostVerdict> verdicts = validator.checkHosts(
+                Arrays.asList("10.0.0.1", "10.0.0.2", "10.0.0.3"), 8, true);
+
+        HostVerdict early = verdicts.get("10.0.0.1");
+        assertFalse(early.isTrustworthy());
+        assertTrue(early.getCheckedListsCount() < SERVERS / 2);
+
+        HostVerdict late = verdicts.get("10.0.0.2");
+        assertFalse(late.isTrustworthy());
+        assertTrue(late.getCheckedListsCount() > 3990 - 8 * 64);
+        assertTrue(late.getCheckedListsCount() > early.getCheckedListsCount());
+
+        // Un host que no llega a la alarma se revisa completo aunque los
+        // demás se hayan detenido
+        HostVerdict clean = verdicts.get("10.0.0.3");
+        assertTrue(clean.isTrustworthy());
+        assertEquals(Arrays.asList(50, 3999), clean.getBlackListOcurrences());
+        assertEquals(SERVERS, clean.getCheckedListsCount());
+    }
+
+    @Test
+    public void nonCanonicalAddressesAreCheckedWithoutTheCache() {
+        SimulatedDataSource dataSource = new SimulatedDataSource(SERVERS, () -> 0L)
+                .addOcurrence(10, "200.24.34.055").addOcurrence(20, "200.24.34.55");
+        HostBlackListsValidator validator = new HostBlackListsValidator();
+        validator.setDataSource(dataSource);
+        VerdictCache cache = new VerdictCache(100, 1, 1, TimeUnit.HOURS);
+        validator.setVerdictCache(cache);
+
+        Map<String, HostVerdict> verdicts = validator.checkHosts(
+                Arrays.asList("200.24.34.055", "200.24.34.55"), 4);
+
+        assertEquals(Arrays.asList(10), verdicts.get("200.24.34.055").getBlackListOcurrences());
+        assertEquals(Arrays.asList(20), verdicts.get("200.24.34.55").getBlackListOcurrences());
+        // Sólo la dirección canónica queda en caché, con su propio veredicto
+        assertEquals(1, cache.size());
+        assertEquals(Arrays.asList(20),
+                cache.getIfPresent(IpAddresses.pack("200.24.34.55")).getBlackListOcurrences());
+    }
+
+    @Test
+    public void verdictsMatchCheckHost() {
+        HostBlackListsValidator validator = new HostBlackListsValidator();
+        String[] hosts = {"202.24.34.55", "200.24.34.55", "212.24.24.55"};
+
+        Map<String, HostVerdict> verdicts = validator.checkHosts(Arrays.asList(hosts), 200);
+
+        for (String host : hosts) {
+            HostVerdict verdict = verdicts.get(host);
+            assertEquals(host, validator.checkHost(host, 200), verdict.getBlackListOcurrences());
+            assertEquals(host, 80000, verdict.getCheckedListsCount());
+        }
+        assertEquals(Arrays.asList(29, 10034, 20200, 31000, 70500),
+                verdicts.get("202.24.34.55").getBlackListOcurrences());
+        assertEquals(Arrays.asList(23, 50, 200, 500, 1000),
+                verdicts.get("200.24.34.55").getBlackListOcurrences());
+        assertTrue(verdicts.get("212.24.24.55").isTrustworthy());
+        assertTrue(verdicts.get("212.24.24.55").getBlackListOcurrences().isEmpty());
+    }
+}
@@ -0,0 +1,61 @@
+package edu.eci.arsw.blacklistvalidator;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class ConcurrencyLimiterTest {
+
+    private static final long PROBE = 1000000;
+
+    @Test
+    public void growsToTheCeilingWhileLatencyIsSteady() {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(2, 200);
+        for (int i = 0; i < 1000; i++) {
+            limiter.recordSample(PROBE * 100, 100, limiter.getLimit());
+        }
+        assertEquals(200, limiter.getLimit());
+    }
+
+    @Test
+    public void shrinksToTheFloorWhenLatencyKeepsRising() {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(4, 200);
+        for (int i = 0; i < 1000; i++) {
+            limiter.recordSample(PROBE * 100, 100, limiter.getLimit());
+        }
+        long latency = PROBE;
+        for (int i = 0; i < 200; i++) {
+            latency = latency * 11 / 10;
+            limiter.recordSample(latency * 100, 100, limiter.getLimit());
+        }
+        assertEquals(4, limiter.getLimit());
+    }
+
+    @Test
+    public void slowFirstSampleDoesNotHideAnOverload() {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(1, 200);
+        limiter.recordSample(PROBE * 20 * 100, 100, limiter.getLimit());
+        for (int i = 0; i < 1000; i++) {
+            limiter.recordSample(PROBE * 100, 100, limiter.getLimit());
+        }
+        assertEquals(200, limiter.getLimit());
+        for (int i = 0; i < 50; i++) {
+            limiter.recordSample(PROBE * 10 * 100, 100, limiter.getLimit());
+        }
+        assertTrue(limiter.toString(), limiter.getLimit() < 20);
+    }
+
+    @Test
+    public void doesNotGrowWhileTheLimitIsNotUsed() {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(1, 200);
+        int initial = limiter.getLimit();
+        for (int i = 0; i < 1000; i++) {
+            limiter.recordSample(PROBE * 100, 100, 0);
+        }
+        assertEquals(initial, limiter.getLimit());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsACeilingBelowTheFloor() {
+        new ConcurrencyLimiter(10, 5);
+    }
+}
@@ -0,0 +1,162 @@
+package edu.eci.arsw.blacklistvalidator;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class HedgedDataSourceTest {
+
+    private static final long FAST = 1000000;
+    private static final long SLOW = 60000000;
+
+    /**
+     * p99 de la latencia de probes consultas hechas desde threads hilos
+     */
+    private static long probeP99(final BlacklistDataSource source, int threads, final int probes)
+            throws InterruptedException {
+        final LatencyHistogram latencies = new LatencyHistogram();
+        List<Thread> workers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            workers.add(new Thread(() -> {
+                for (int i = 0; i < probes; i++) {
+                    long begin = System.nanoTime();
+                    source.isInBlackListServer(i, "202.24.34.55");
+                    latencies.record(System.nanoTime() - begin);
+                }
+            }));
+        }
+        for (Thread worker : workers) {
+            worker.start();
+        }
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        return latencies.getPercentile(99);
+    }
+
+    @Test
+    public void hedgingCutsTheTailLatency() throws InterruptedException {
+        SimulatedDataSource slowTail = new SimulatedDataSource(80000,
+                SimulatedDataSource.slowTail(FAST, SLOW, 0.03));
+        try (HedgedDataSource hedged = new HedgedDataSource(slowTail, 90, 0.2)) {
+            // La primera ventana sólo mide latencias
+            probeP99(hedged, 16, 100);
+            long hedgedP99 = probeP99(hedged, 16, 200);
+            long plainP99 = probeP99(slowTail, 16, 200);
+
+            assertTrue(hedged.getHedgeThresholdNanos() > 0);
+            assertTrue(hedged.getHedgeWinCount() > 0);
+            assertTrue("plain p99 " + plainP99, plainP99 >= SLOW);
+            assertTrue("hedged p99 " + hedgedP99, hedgedP99 < SLOW / 4);
+        }
+    }
+
+    @Test
+    public void hedgesStayWithinTheBudget() throws InterruptedException {
+        SimulatedDataSource slowTail = new SimulatedDataSource(80000,
+                SimulatedDataSource.slowTail(FAST, 4 * FAST, 0.5));
+        try (HedgedDataSource hedged = new HedgedDataSource(slowTail, 50, 0.01)) {
+            probeP99(hedged, 16, 250);
+            assertTrue(hedged.getHedgeCount() > 0);
+            assertTrue("hedges " + hedged.getHedgeCount(),
+                    hedged.getHedgeCount() <= 0.01 * hedged.getProbeCount() + 10);
+        }
+    }
+
+    @Test
+    public void fullPoolRunsTheProbeWithoutAHedge() throws InterruptedException {
+        SimulatedDataSource slowTail = new SimulatedDataSource(80000,
+                SimulatedDataSource.slowTail(FAST, 4 * FAST, 0.3));
+        long rejectedBefore = ScanMetrics.getInstance().getRejectedHedgeCount();
+        try (HedgedDataSource hedged = new HedgedDataSource(slowTail, 50, 1.0, 2)) {
+            probeP99(hedged, 16, 150);
+            // Todas las consultas se hicieron, aunque el pool sólo tenga dos hilos
+            assertEquals(16 * 150, hedged.getProbeCount());
+            assertTrue(slowTail.getProbeCount() >= 16 * 150);
+            // Las copias que no cupieron se cuentan y no gastan presupuesto
+            assertTrue(hedged.getRejectedHedgeCount() > 0);
+            assertTrue(ScanMetrics.getInstance().getRejectedHedgeCount()
+                    >= rejectedBefore + hedged.getRejectedHedgeCount());
+            assertTrue(hedged.getHedgeCount() + hedged.getRejectedHedgeCount() <= hedged.getProbeCount() + 10);
+        }
+    }
+
+    @Test
+    public void losingProbesFinishWithoutInterruptingTheCaller() throws InterruptedException {
+        SimulatedDataSource slowTail = new SimulatedDataSource(80000,
+                SimulatedDataSource.slowTail(FAST, 20 * FAST, 0.05));
+        for (int server = 0; server < 1500; server += 7) {
+            slowTail.addOcurrence(server, "202.24.34.55");
+        }
+        try (HedgedDataSource hedged = new HedgedDataSource(slowTail, 90, 0.05)) {
+            for (int i = 0; i < 1500; i++) {
+                assertEquals(i % 7 == 0, hedged.isInBlackListServer(i, "202.24.34.55"));
+            }
+            assertTrue(hedged.getHedgeThresholdNanos() > 0);
+            assertTrue(hedged.getHedgeWinCount() > 0);
+            assertFalse(Thread.currentThread().isInterrupted());
+            // Las consultas que perdieron también terminan
+            long deadline = System.nanoTime() + 5 * SLOW;
+            while (slowTail.getProbeCount() < hedged.getProbeCount() + hedged.getHedgeCount()
+                    && System.nanoTime() < deadline) {
+                Thread.sleep(1);
+            }
+            assertEquals(hedged.getProbeCount() + hedged.getHedgeCount(), slowTail.getProbeCount());
+        }
+    }
+
+    @Test
+    public void interruptedCallerStopsWaiting() throws InterruptedException {
+        // Las primeras 1000 consultas responden rápido y fijan el umbral; la
+        // siguiente tarda mucho más de lo que dura la prueba
+        final AtomicBoolean stalled = new AtomicBoolean(false);
+        SimulatedDataSource source = new SimulatedDataSource(2000,
+                () -> stalled.get() ? 100 * SLOW : 100000);
+        try (HedgedDataSource hedged = new HedgedDataSource(source, 90, 0)) {
+            for (int i = 0; i < 1000; i++) {
+                hedged.isInBlackListServer(i, "202.24.34.55");
+            }
+            assertTrue(hedged.getHedgeThresholdNanos() > 0);
+            stalled.set(true);
+
+            final Throwable[] failure = new Throwable[1];
+            final boolean[] interrupted = new boolean[1];
+            Thread caller = new Thread(() -> {
+                try {
+                    hedged.isInBlackListServer(1500, "202.24.34.55");
+                } catch (IllegalStateException ex) {
+                    failure[0] = ex;
+                    interrupted[0] = Thread.currentThread().isInterrupted();
+                }
+            });
+            caller.start();
+            Thread.sleep(SLOW / 1000000);
+            caller.interrupt();
+            caller.join(10 * SLOW / 1000000);
+
+            assertFalse(caller.isAlive());
+            assertTrue(failure[0] != null);
+            assertTrue(failure[0].getCause() instanceof InterruptedException);
+            assertTrue(interrupted[0]);
+        }
+    }
+
+    @Test
+    public void hedgedScanFindsTheSameOcurrences() {
+        SimulatedDataSource source = new SimulatedDataSource(3000,
+                SimulatedDataSource.slowTail(100000, 5000000, 0.02));
+        for (int server : new int[]{29, 1034, 2020, 2100, 2999}) {
+            source.addOcurrence(server, "202.24.34.55");
+        }
+        try (HedgedDataSource hedged = new HedgedDataSource(source, 95, 0.05)) {
+            HostBlackListsValidator validator = new HostBlackListsValidator();
+            validator.setDataSource(hedged);
+            assertEquals(Arrays.asList(29, 1034, 2020, 2100, 2999), validator.checkHost("202.24.34.55", 16));
+            assertEquals(Arrays.asList(), validator.checkHost("212.24.24.55", 16));
+        }
+    }
+}
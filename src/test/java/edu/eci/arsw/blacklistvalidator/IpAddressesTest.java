@@ -0,0 +1,35 @@
+package edu.eci.arsw.blacklistvalidator;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class IpAddressesTest {
+
+    @Test
+    public void packsAndUnpacksAddresses() {
+        assertEquals(0xC8182237, IpAddresses.pack("200.24.34.55"));
+        assertEquals("200.24.34.55", IpAddresses.unpack(IpAddresses.pack("200.24.34.55")));
+        assertEquals("255.255.255.255", IpAddresses.unpack(IpAddresses.pack("255.255.255.255")));
+        assertEquals("0.0.0.0", IpAddresses.unpack(IpAddresses.pack("0.0.0.0")));
+        for (String invalid : Arrays.asList("", "1.2.3", "1.2.3.4.", "1..2.3", "256.0.0.1", "1.2.3.a",
+                "200.24.34.055", "010.0.0.1", "1.00.2.3")) {
+            try {
+                IpAddresses.pack(invalid);
+                fail("Accepted " + invalid);
+            } catch (IllegalArgumentException expected) {
+            }
+        }
+    }
+
+    @Test
+    public void tryPackRejectsLeadingZeros() {
+        byte[] line = "200.24.34.055".getBytes(StandardCharsets.US_ASCII);
+        assertEquals(-1, IpAddresses.tryPack(ByteBuffer.wrap(line), 0, line.length));
+        line = "200.24.34.55".getBytes(StandardCharsets.US_ASCII);
+        assertEquals(0xC8182237L, IpAddresses.tryPack(ByteBuffer.wrap(line), 0, line.length));
+    }
+}
@@ -0,0 +1,110 @@
+package edu.eci.arsw.blacklistvalidator;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class ScanMetricsTest {
+
+    @Test
+    public void histogramEstimatesPercentilesWithinABucket() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (long value = 1; value <= 10000; value++) {
+            histogram.record(value);
+        }
+        assertEquals(10000, histogram.getCount());
+        assertEquals(10000, histogram.getMax());
+        assertEquals(5000.5, histogram.getMean(), 1e-9);
+        assertEquals(5000, histogram.getPercentile(50), 5000 / 8);
+        assertEquals(9900, histogram.getPercentile(99), 9900 / 8);
+        assertEquals(10000, histogram.getPercentile(100));
+        assertEquals(0, new LatencyHistogram().getPercentile(99));
+    }
+
+    @Test
+    public void bucketBoundsCoverEveryValue() {
+        for (long value : new long[]{0, 1, 7, 8, 9, 15, 16, 17, 1000, 123456789, Long.MAX_VALUE}) {
+            int bucket = LatencyHistogram.bucketOf(value);
+            assertTrue(value <= LatencyHistogram.upperBoundOf(bucket));
+            assertTrue(bucket == 0 || value > LatencyHistogram.upperBoundOf(bucket - 1));
+        }
+    }
+
+    @Test
+    public void concurrentRecordsAreNotLost() throws InterruptedException {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 8; t++) {
+            threads.add(new Thread(() -> {
+                for (int i = 0; i < 100000; i++) {
+                    histogram.record(1000000);
+                }
+            }));
+        }
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(800000, histogram.getCount());
+        assertEquals(800000L * 1000000, histogram.getSum());
+    }
+
+    @Test
+    public void workerCountersStayBoundedWithManyThreads() throws InterruptedException {
+        ScanMetrics metrics = ScanMetrics.getInstance();
+        long before = total(metrics.getWorkerChecks().values());
+        int threads = 2 * ScanMetrics.MAX_TRACKED_WORKERS;
+        for (int t = 0; t < threads; t++) {
+            // Cada hilo tiene un nombre nuevo, como los de los pools cacheados
+            Thread thread = new Thread(() -> metrics.recordWork(1, 0), "metrics-test-" + t);
+            thread.start();
+            thread.join();
+        }
+        assertTrue(metrics.getWorkerChecks().size() <= ScanMetrics.MAX_TRACKED_WORKERS + 1);
+        assertTrue(metrics.getWorkerChecks().containsKey(ScanMetrics.OTHER_WORKERS));
+        assertTrue(total(metrics.getWorkerChecks().values()) >= before + threads);
+    }
+
+    private static long total(Collection<Long> values) {
+        long total = 0;
+        for (long value : values) {
+            total += value;
+        }
+        return total;
+    }
+
+    @Test
+    public void scansAreRecordedAndExposedThroughJmx() throws Exception {
+        ScanMetrics metrics = ScanMetrics.getInstance();
+        ScanMetricsSnapshot before = metrics.snapshot();
+
+        HostVerdict verdict = new HostBlackListsValidator().checkHostAsync("212.24.24.55",
+                ScanOptions.threads(4).deadline(100, TimeUnit.MILLISECONDS)).get(5, TimeUnit.SECONDS);
+
+        ScanMetricsSnapshot after = metrics.snapshot();
+        assertTrue(verdict.isPartial());
+        // Las métricas son de todo el proceso: búsquedas de otras pruebas que
+        // terminen tarde también pueden sumar
+        assertTrue(after.getPartialCount() >= before.getPartialCount() + 1);
+        assertTrue(after.getScanCount() >= before.getScanCount() + 1);
+        assertTrue(after.getProbeCount() - before.getProbeCount() >= verdict.getCheckedListsCount());
+        assertTrue(after.getProbeLatencyP99Nanos() > 0);
+        assertTrue(after.getWorkerChecks().containsKey("blacklist-worker-0")
+                || after.getWorkerChecks().containsKey(ScanMetrics.OTHER_WORKERS));
+
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = new ObjectName(ScanMetrics.OBJECT_NAME);
+        assertTrue(server.isRegistered(name));
+        long scans = metrics.getScanCount();
+        assertTrue((Long) server.getAttribute(name, "ScanCount") >= scans);
+    }
+}
@@ -0,0 +1,54 @@
+package edu.eci.arsw.blacklistvalidator;
+
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class ShardCoordinatorTest {
+
+    @Test
+    public void shardsMergeEveryOcurrenceInOrder() throws Exception {
+        try (ShardCoordinator coordinator = ShardCoordinator.launch(3, 50)) {
+            HostVerdict verdict = coordinator.checkHost("202.24.34.55", false);
+
+            assertFalse(verdict.isTrustworthy());
+            assertFalse(verdict.isPartial());
+            assertEquals(Arrays.asList(29, 10034, 20200, 31000, 70500), verdict.getBlackListOcurrences());
+            assertEquals(80000, verdict.getCheckedListsCount());
+
+            HostVerdict stopped = coordinator.checkHost("200.24.34.55", true);
+            assertFalse(stopped.isTrustworthy());
+            assertEquals(Arrays.asList(23, 50, 200, 500, 1000), stopped.getBlackListOcurrences());
+            assertTrue(stopped.getCheckedListsCount() < 80000);
+
+            HostVerdict clean = coordinator.checkHost("202.24.34.54", true);
+            assertTrue(clean.isTrustworthy());
+            assertEquals(Arrays.asList(39, 10134, 20300, 70210), clean.getBlackListOcurrences());
+            assertEquals(80000, clean.getCheckedListsCount());
+        }
+    }
+
+    @Test
+    public void shardOfDeadWorkerIsReassigned() throws Exception {
+        try (final ShardCoordinator coordinator = ShardCoordinator.launch(3, 20)) {
+            CompletableFuture<HostVerdict> scan = CompletableFuture.supplyAsync(
+                    () -> coordinator.checkHost("202.24.34.55", false));
+            // Se mata al trabajador 0 mientras revisa un shard
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+            while (!coordinator.hasShard(0)) {
+                assertTrue("worker 0 never got a shard", System.nanoTime() < deadline);
+                Thread.sleep(1);
+            }
+            coordinator.getWorkerProcesses().get(0).destroyForcibly();
+
+            HostVerdict verdict = scan.get(60, TimeUnit.SECONDS);
+            assertEquals(1, coordinator.getRequeuedShardCount());
+            assertFalse(verdict.isPartial());
+            assertEquals(Arrays.asList(29, 10034, 20200, 31000, 70500), verdict.getBlackListOcurrences());
+            assertEquals(80000, verdict.getCheckedListsCount());
+        }
+    }
+}
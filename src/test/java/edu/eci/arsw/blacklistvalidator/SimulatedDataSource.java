@@ -0,0 +1,118 @@
+package edu.eci.arsw.blacklistvalidator;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.IntToLongFunction;
+import java.util.function.LongSupplier;
+
+/**
+ * Listas negras en memoria cuyas consultas tardan lo que indique una
+ * distribución de latencias configurable, para probar sin la fachada.
+ */
+public class SimulatedDataSource implements BlacklistDataSource {
+
+    private final int serversCount;
+    private final IntToLongFunction latencyNanos;
+    private final AtomicInteger inFlight = new AtomicInteger(0);
+    private final Set<String> ocurrences = new HashSet<>();
+    private final LongAdder probes = new LongAdder();
+    private final ConcurrentHashMap<String, AtomicInteger> reports = new ConcurrentHashMap<>();
+
+    /**
+     * @param latencyNanos latencia de cada consulta; se evalúa una vez por consulta
+     */
+    public SimulatedDataSource(int serversCount, LongSupplier latencyNanos) {
+        this(serversCount, inFlight -> latencyNanos.getAsLong());
+    }
+
+    /**
+     * @param latencyNanos latencia de cada consulta según cuántas consultas
+     * hay en curso, contando ésta
+     */
+    public SimulatedDataSource(int serversCount, IntToLongFunction latencyNanos) {
+        this.serversCount = serversCount;
+        this.latencyNanos = latencyNanos;
+    }
+
+    /**
+     * Latencia base mientras haya hasta capacity consultas en curso; con más,
+     * cada consulta tarda penalty veces más, como un servidor saturado
+     */
+    public static IntToLongFunction overloaded(final long baseNanos, final int capacity, final int penalty) {
+        return inFlight -> inFlight <= capacity ? baseNanos : baseNanos * penalty;
+    }
+
+    /**
+     * Latencia fast, salvo una fracción slowFraction de consultas que tarda slow
+     */
+    public static LongSupplier slowTail(final long fastNanos, final long slowNanos, final double slowFraction) {
+        return () -> ThreadLocalRandom.current().nextDouble() < slowFraction ? slowNanos : fastNanos;
+    }
+
+    public SimulatedDataSource addOcurrence(int serverNumber, String ipaddress) {
+        ocurrences.add(key(serverNumber, ipaddress));
+        return this;
+    }
+
+    @Override
+    public int getRegisteredServersCount() {
+        return serversCount;
+    }
+
+    @Override
+    public boolean isInBlackListServer(int serverNumber, String ipaddress) {
+        probes.increment();
+        long delay = latencyNanos.applyAsLong(inFlight.incrementAndGet());
+        long deadline = System.nanoTime() + delay;
+        try {
+            while (delay > 0) {
+                LockSupport.parkNanos(delay);
+                delay = deadline - System.nanoTime();
+            }
+        } finally {
+            inFlight.decrementAndGet();
+        }
+        return ocurrences.contains(key(serverNumber, ipaddress));
+    }
+
+    @Override
+    public void reportAsTrustworthy(String host) {
+        reportCount(host).incrementAndGet();
+    }
+
+    @Override
+    public void reportAsNotTrustworthy(String host) {
+        reportCount(host).incrementAndGet();
+    }
+
+    /**
+     * @return consultas hechas hasta ahora
+     */
+    public long getProbeCount() {
+        return probes.sum();
+    }
+
+    /**
+     * @return veces que se reportó el host, como confiable o no
+     */
+    public int getReportCount(String host) {
+        return reportCount(host).get();
+    }
+
+    private AtomicInteger reportCount(String host) {
+        return reports.computeIfAbsent(host, h -> new AtomicInteger(0));
+    }
+
+    /**
+     * La IP va tal como llega, como en la fachada, para poder consultar
+     * también direcciones no canónicas
+     */
+    private static String key(int serverNumber, String ipaddress) {
+        return serverNumber + "/" + ipaddress;
+    }
+}
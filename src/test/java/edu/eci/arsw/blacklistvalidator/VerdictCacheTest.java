@@ -0,0 +1,246 @@
+package edu.eci.arsw.blacklistvalidator;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.IntFunction;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class VerdictCacheTest {
+
+    private static HostVerdict verdict(int ipaddress, boolean trustworthy) {
+        return new HostVerdict(IpAddresses.unpack(ipaddress), trustworthy, new ArrayList<Integer>(), 80000);
+    }
+
+    @Test
+    public void leadingZerosDoNotShareAKey() {
+        // "200.24.34.055" no debe responder con el veredicto de "200.24.34.55"
+        HostBlackListsValidator validator = new HostBlackListsValidator();
+        validator.setVerdictCache(new VerdictCache(100, 1, 1, TimeUnit.HOURS));
+        try {
+            validator.checkHost("200.24.34.055", 10);
+            fail("Accepted a non-canonical address");
+        } catch (IllegalArgumentException expected) {
+        }
+        assertEquals(0, validator.getVerdictCache().size());
+    }
+
+    @Test
+    public void countsOneMissPerLoad() {
+        VerdictCache cache = new VerdictCache(100, 1, 1, TimeUnit.HOURS);
+        cache.get(7, ip -> verdict(ip, false));
+        cache.get(7, ip -> verdict(ip, false));
+        assertEquals(1, cache.getMissCount());
+        assertEquals(1, cache.getHitCount());
+    }
+
+    @Test
+    public void uncacheableLoadsAreNeverStored() {
+        VerdictCache cache = new VerdictCache(100, 1, 1, TimeUnit.HOURS);
+        HostVerdict loaded = cache.get(7, ip -> verdict(ip, false), verdict -> false);
+        assertNotNull(loaded);
+        assertEquals(0, cache.size());
+        assertNull(cache.getIfPresent(7));
+    }
+
+    @Test
+    public void onlyCompleteVerdictsAreCached() throws Exception {
+        final String ip = "202.24.34.55";
+        SimulatedDataSource source = new SimulatedDataSource(3000, () -> 20000L);
+        for (int server : new int[]{3, 5, 8, 13, 21, 2999}) {
+            source.addOcurrence(server, ip);
+        }
+        final HostBlackListsValidator validator = new HostBlackListsValidator();
+        validator.setDataSource(source);
+        validator.setVerdictCache(new VerdictCache(100, 1, 1, TimeUnit.HOURS));
+
+        // Detenida en la alarma antes de la última lista: no sirve para una
+        // revisión completa
+        assertEquals(Arrays.asList(3, 5, 8, 13, 21), validator.checkHost(ip, 4, true));
+        assertEquals(0, validator.getVerdictCache().size());
+
+        // Revisiones completas a la vez comparten una sola búsqueda
+        long probesBefore = source.getProbeCount();
+        ExecutorService callers = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<List<Integer>>> results = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                results.add(callers.submit(() -> validator.checkHost(ip, 4, false)));
+            }
+            for (Future<List<Integer>> result : results) {
+                assertEquals(Arrays.asList(3, 5, 8, 13, 21, 2999), result.get());
+            }
+        } finally {
+            callers.shutdown();
+        }
+        assertEquals(3000, source.getProbeCount() - probesBefore);
+        assertEquals(1, validator.getVerdictCache().size());
+    }
+
+    @Test
+    public void fullCheckJoiningAStopAtAlarmLoadScansOnce() throws Exception {
+        final String ip = "202.24.34.55";
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        SimulatedDataSource source = new SimulatedDataSource(3000, () -> 20000L) {
+            @Override
+            public boolean isInBlackListServer(int serverNumber, String ipaddress) {
+                started.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                }
+                return super.isInBlackListServer(serverNumber, ipaddress);
+            }
+        };
+        for (int server : new int[]{3, 5, 8, 13, 21, 2999}) {
+            source.addOcurrence(server, ip);
+        }
+        final HostBlackListsValidator validator = new HostBlackListsValidator();
+        validator.setDataSource(source);
+        VerdictCache cache = new VerdictCache(100, 1, 1, TimeUnit.HOURS);
+        validator.setVerdictCache(cache);
+
+        ExecutorService callers = Executors.newFixedThreadPool(2);
+        try {
+            Future<List<Integer>> stopped = callers.submit(() -> validator.checkHost(ip, 4, true));
+            assertTrue(started.await(5, TimeUnit.SECONDS));
+            Future<List<Integer>> full = callers.submit(() -> validator.checkHost(ip, 4, false));
+            while (cache.getCoalescedLoadCount() < 1) {
+                Thread.sleep(1);
+            }
+            release.countDown();
+            assertEquals(Arrays.asList(3, 5, 8, 13, 21), stopped.get());
+            assertEquals(Arrays.asList(3, 5, 8, 13, 21, 2999), full.get());
+        } finally {
+            callers.shutdown();
+        }
+        // La revisión completa no vuelve a esperar la carga que ya terminó
+        assertEquals(1, cache.getCoalescedLoadCount());
+        assertEquals(2, cache.getMissCount());
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    public void evictsLeastRecentlyUsed() {
+        VerdictCache cache = new VerdictCache(1600, 1, 1, TimeUnit.HOURS);
+        for (int ip = 0; ip < 10000; ip++) {
+            cache.put(ip, verdict(ip, false));
+            assertNotNull(cache.getIfPresent(0));
+        }
+        assertEquals(1600, cache.size());
+        assertEquals(10000 - 1600, cache.getEvictionCount());
+        assertNotNull(cache.getIfPresent(9999));
+    }
+
+    @Test
+    public void neverHoldsMoreThanMaximumSize() {
+        VerdictCache cache = new VerdictCache(100, 1, 1, TimeUnit.HOURS);
+        for (int ip = 0; ip < 10000; ip++) {
+            cache.put(ip, verdict(ip, false));
+            assertTrue(cache.size() <= 100);
+        }
+    }
+
+    @Test
+    public void expiresByVerdictTtl() throws InterruptedException {
+        VerdictCache cache = new VerdictCache(100, 1, 20, TimeUnit.MILLISECONDS);
+        cache.put(1, verdict(1, true));
+        cache.put(2, verdict(2, false));
+        assertNotNull(cache.getIfPresent(1));
+        Thread.sleep(30);
+        assertNull(cache.getIfPresent(1));
+        assertNull(cache.getIfPresent(2));
+        assertEquals(2, cache.getExpirationCount());
+
+        VerdictCache noNegatives = new VerdictCache(100, 1, 0, TimeUnit.HOURS);
+        noNegatives.put(1, verdict(1, true));
+        assertNull(noNegatives.getIfPresent(1));
+    }
+
+    @Test
+    public void concurrentMissesShareOneLoad() throws Exception {
+        final VerdictCache cache = new VerdictCache(100, 1, 1, TimeUnit.HOURS);
+        final AtomicInteger loads = new AtomicInteger(0);
+        final CountDownLatch release = new CountDownLatch(1);
+        ExecutorService callers = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<HostVerdict>> results = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                results.add(callers.submit(() -> cache.get(42, ip -> {
+                    loads.incrementAndGet();
+                    try {
+                        release.await();
+                    } catch (InterruptedException ex) {
+                        Thread.currentThread().interrupt();
+                    }
+                    return verdict(ip, false);
+                })));
+            }
+            while (cache.getCoalescedLoadCount() < 7) {
+                Thread.sleep(1);
+            }
+            release.countDown();
+            for (Future<HostVerdict> result : results) {
+                assertEquals("0.0.0.42", result.get().getIpAddress());
+            }
+        } finally {
+            callers.shutdown();
+        }
+        assertEquals(1, loads.get());
+        assertNotNull(cache.getIfPresent(42));
+    }
+
+    @Test
+    public void loadFinishedBeforeRegisteringIsNotRepeated() throws Exception {
+        final int ip = IpAddresses.pack("10.0.0.7");
+        final AtomicInteger loads = new AtomicInteger(0);
+        final CountDownLatch missed = new CountDownLatch(1);
+        final CountDownLatch loaded = new CountDownLatch(1);
+        final AtomicReference<Thread> late = new AtomicReference<>();
+        final VerdictCache cache = new VerdictCache(100, 1, 1, TimeUnit.HOURS) {
+            @Override
+            public HostVerdict getIfPresent(int ipaddress) {
+                HostVerdict verdict = super.getIfPresent(ipaddress);
+                // El hilo tardío se detiene tras su primer fallo, hasta que
+                // la otra carga termine y deje de estar en vuelo
+                if (verdict == null && late.compareAndSet(Thread.currentThread(), null)) {
+                    missed.countDown();
+                    try {
+                        loaded.await();
+                    } catch (InterruptedException ex) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+                return verdict;
+            }
+        };
+        final IntFunction<HostVerdict> loader = key -> {
+            loads.incrementAndGet();
+            return verdict(key, false);
+        };
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        Future<HostVerdict> lateGet = executor.submit(() -> {
+            late.set(Thread.currentThread());
+            return cache.get(ip, loader);
+        });
+        assertTrue(missed.await(5, TimeUnit.SECONDS));
+        HostVerdict first = cache.get(ip, loader);
+        loaded.countDown();
+
+        assertSame(first, lateGet.get(5, TimeUnit.SECONDS));
+        assertEquals(1, loads.get());
+        executor.shutdown();
+    }
+}
@@ -49,4 +49,92 @@ public class PiCalcTest {
         }
     }
 
+    @Test
+    public void largeOffsetTest() throws Exception {
+        // Dígitos desde la posición 1.000.000 (contando desde 1) según Bailey
+        byte[] expected = new byte[]{
+            0x2, 0x6, 0xC, 0x6, 0x5, 0xE, 0x5, 0x2,
+            0xC, 0xB, 0x4, 0x5, 0x9, 0x3};
+
+        assertArrayEquals(expected, PiDigits.getDigits(999999, expected.length, 4));
+        // Ahora los bloques vienen de la caché, también para un rango parcial
+        byte[] tail = PiDigits.getDigits(1000003, 10);
+        for (int i = 0; i < tail.length; i++) {
+            assertEquals(expected[4 + i], tail[i]);
+        }
+    }
+
+    @Test
+    public void digitsBeforeARunOfZerosOrFsTest() throws Exception {
+        // En 79938 empieza "0000" y en 109572 "fff", justo después de un
+        // bloque: la evaluación del bloque no puede dar sus seis dígitos
+        byte[] beforeZeros = new byte[]{
+            0x9, 0xE, 0x9, 0x3, 0x8, 0x7, 0x0, 0x0, 0x0, 0x0, 0x6, 0x1};
+        byte[] beforeFs = new byte[]{
+            0x2, 0x4, 0xF, 0x9, 0x9, 0x7, 0xF, 0xF, 0xF, 0x9, 0x3, 0xC};
+
+        assertArrayEquals(beforeZeros, PiDigits.getDigits(79932, beforeZeros.length));
+        assertArrayEquals(beforeFs, PiDigits.getDigits(109566, beforeFs.length, 2));
+    }
+
+    @Test
+    public void checkedDigitsStopBeforeTheErrorReachesADigitTest() throws Exception {
+        double sixteenToSix = Math.pow(16, 6);
+        // Tras seis dígitos queda 1e-6, menos que el error escalado
+        assertEquals(5, PiDigits.checkedDigits((0x123456 + 1e-6) / sixteenToSix, 6, 1e-10));
+        assertEquals(6, PiDigits.checkedDigits((0x123456 + 0.5) / sixteenToSix, 6, 1e-10));
+        assertEquals(0x12345, PiDigits.leadingDigits((0x123456 + 1e-6) / sixteenToSix, 5));
+        // Ni el primer dígito se puede decidir
+        assertEquals(0, PiDigits.checkedDigits(1e-12, 6, 1e-10));
+    }
+
+    @Test
+    public void reliableDigitsShrinkWithPositionTest() throws Exception {
+        assertEquals(PiDigits.BLOCK_DIGITS, PiDigits.reliableDigits(0));
+        assertEquals(PiDigits.BLOCK_DIGITS, PiDigits.reliableDigits(1000000));
+        assertEquals(PiDigits.BLOCK_DIGITS, PiDigits.reliableDigits(10000000));
+        int previous = PiDigits.BLOCK_DIGITS;
+        for (int position = 1; position > 0 && position < PiDigits.MAX_POSITION; position *= 2) {
+            int digits = PiDigits.reliableDigits(position);
+            assertTrue(digits <= previous);
+            previous = digits;
+        }
+        // Cerca del límite hace falta más de una evaluación por bloque
+        int last = PiDigits.reliableDigits(PiDigits.MAX_POSITION - 1);
+        assertTrue(last >= 1 && last < PiDigits.BLOCK_DIGITS);
+    }
+
+    @Test
+    public void splitEvaluationsMatchOneEvaluationTest() throws Exception {
+        int block = PiDigits.computeBlock(20004, PiDigits.BLOCK_DIGITS);
+        for (int digits = 1; digits < PiDigits.BLOCK_DIGITS; digits++) {
+            assertEquals(block, PiDigits.computeBlock(20004, digits));
+        }
+    }
+
+    @Test
+    public void parallelMatchesSequentialTest() throws Exception {
+        byte[] sequential = PiDigits.getDigits(20000, 300, 1);
+        for (int threads = 2; threads <= 8; threads++) {
+            byte[] parallel = PiDigits.getDigits(20000 + threads, 300 - threads, threads);
+            for (int i = 0; i < parallel.length; i++) {
+                assertEquals(sequential[threads + i], parallel[i]);
+            }
+        }
+    }
+
+    @Test(expected = ArrayIndexOutOfBoundsException.class)
+    public void failedWorkerIsRethrownTest() throws Exception {
+        byte[] digits = new byte[12];
+        // El segundo hilo escribe fuera del array y muere
+        PiDigits.runAll(new PiDigitsThread[]{
+            new PiDigitsThread(digits, 0, 0, 6),
+            new PiDigitsThread(digits, 0, 6, 18)});
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void negativeStartTest() throws Exception {
+        PiDigits.getDigits(-1, 4);
+    }
+
 }